@@ -13,6 +13,10 @@ public class ProductAggregate {
     private final List<RecommendationSummary> recommendations;
     private final List<ReviewSummary> reviews;
     private final ServiceAddresses serviceAddresses;
+    // Set when the embedded list is a full page of app.aggregate-max-details entries, the rest may be read from
+    // /product-composite/{productId}/recommendations or /reviews, after the id of the last embedded entry
+    private final boolean hasMoreRecommendations;
+    private final boolean hasMoreReviews;
 
     public ProductAggregate() {
         this.productId = 0;
@@ -21,14 +25,23 @@ public class ProductAggregate {
         this.recommendations = null;
         this.reviews = null;
         this.serviceAddresses = null;
+        this.hasMoreRecommendations = false;
+        this.hasMoreReviews = false;
     }
 
     public ProductAggregate(int productId, String name, int weight, List<RecommendationSummary> recommendations, List<ReviewSummary> reviews, ServiceAddresses serviceAddresses) {
+        this(productId, name, weight, recommendations, reviews, serviceAddresses, false, false);
+    }
+
+    public ProductAggregate(int productId, String name, int weight, List<RecommendationSummary> recommendations, List<ReviewSummary> reviews, ServiceAddresses serviceAddresses,
+                            boolean hasMoreRecommendations, boolean hasMoreReviews) {
         this.productId = productId;
         this.name = name;
         this.weight = weight;
         this.recommendations = recommendations;
         this.reviews = reviews;
         this.serviceAddresses = serviceAddresses;
+        this.hasMoreRecommendations = hasMoreRecommendations;
+        this.hasMoreReviews = hasMoreReviews;
     }
 }
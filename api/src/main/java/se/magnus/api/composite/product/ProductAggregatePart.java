@@ -0,0 +1,45 @@
+package se.magnus.api.composite.product;
+
+import lombok.Getter;
+
+@Getter
+public class ProductAggregatePart {
+    public enum Type {PRODUCT, RECOMMENDATION, REVIEW}
+
+    private final Type type;
+    private final int productId;
+    private final String name;
+    private final int weight;
+    private final RecommendationSummary recommendation;
+    private final ReviewSummary review;
+
+    public ProductAggregatePart() {
+        this.type = null;
+        this.productId = 0;
+        this.name = null;
+        this.weight = 0;
+        this.recommendation = null;
+        this.review = null;
+    }
+
+    public ProductAggregatePart(Type type, int productId, String name, int weight, RecommendationSummary recommendation, ReviewSummary review) {
+        this.type = type;
+        this.productId = productId;
+        this.name = name;
+        this.weight = weight;
+        this.recommendation = recommendation;
+        this.review = review;
+    }
+
+    public static ProductAggregatePart product(int productId, String name, int weight) {
+        return new ProductAggregatePart(Type.PRODUCT, productId, name, weight, null, null);
+    }
+
+    public static ProductAggregatePart recommendation(int productId, RecommendationSummary recommendation) {
+        return new ProductAggregatePart(Type.RECOMMENDATION, productId, null, 0, recommendation, null);
+    }
+
+    public static ProductAggregatePart review(int productId, ReviewSummary review) {
+        return new ProductAggregatePart(Type.REVIEW, productId, null, 0, null, review);
+    }
+}
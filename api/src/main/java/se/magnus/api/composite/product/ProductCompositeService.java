@@ -2,12 +2,36 @@ package se.magnus.api.composite.product;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ProductCompositeService {
     @GetMapping(value = "/product-composite/{productId}", produces = "application/json")
     Mono<ProductAggregate> getCompositeProduct(@PathVariable int productId);
 
+    @GetMapping(value = "/product-composite/{productId}", params = "fields", produces = "application/json")
+    Mono<SparseProductAggregate> getCompositeProduct(@PathVariable int productId, @RequestParam(value = "fields", required = true) List<String> fields);
+
+    @GetMapping(value = "/product-composite/{productId}/stream", produces = {"application/x-ndjson", "text/event-stream"})
+    Flux<ProductAggregatePart> getCompositeProductStream(@PathVariable int productId);
+
+    @GetMapping(value = "/product-composite/{productId}/recommendations", produces = "application/json")
+    Flux<RecommendationSummary> getCompositeProductRecommendations(
+            @PathVariable int productId,
+            @RequestParam(value = "afterRecommendationId", required = false, defaultValue = "0") int afterRecommendationId,
+            @RequestParam(value = "pageSize", required = false, defaultValue = "20") int pageSize);
+
+    @GetMapping(value = "/product-composite/{productId}/reviews", produces = "application/json")
+    Flux<ReviewSummary> getCompositeProductReviews(
+            @PathVariable int productId,
+            @RequestParam(value = "afterReviewId", required = false, defaultValue = "0") int afterReviewId,
+            @RequestParam(value = "pageSize", required = false, defaultValue = "20") int pageSize);
+
+    @GetMapping(value = "/product-composite", produces = "application/json")
+    Flux<ProductAggregate> getCompositeProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
     @PostMapping(value = "/product-composite", consumes = "application/json")
     @ResponseStatus(HttpStatus.ACCEPTED)
     Mono<Void> createCompositeProduct(@RequestBody ProductAggregate body);
@@ -0,0 +1,44 @@
+package se.magnus.api.composite.product;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+import java.util.List;
+
+// The parts of a ProductAggregate selected with ?fields=, the parts that were not selected are left out. Unlike
+// ProductAggregate the weight is nullable, it is only present when the product part is selected
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SparseProductAggregate {
+    private final int productId;
+    private final String name;
+    private final Integer weight;
+    private final List<RecommendationSummary> recommendations;
+    private final List<ReviewSummary> reviews;
+    private final ServiceAddresses serviceAddresses;
+    private final Boolean hasMoreRecommendations;
+    private final Boolean hasMoreReviews;
+
+    public SparseProductAggregate() {
+        this.productId = 0;
+        this.name = null;
+        this.weight = null;
+        this.recommendations = null;
+        this.reviews = null;
+        this.serviceAddresses = null;
+        this.hasMoreRecommendations = null;
+        this.hasMoreReviews = null;
+    }
+
+    public SparseProductAggregate(int productId, String name, Integer weight, List<RecommendationSummary> recommendations, List<ReviewSummary> reviews, ServiceAddresses serviceAddresses,
+                                  Boolean hasMoreRecommendations, Boolean hasMoreReviews) {
+        this.productId = productId;
+        this.name = name;
+        this.weight = weight;
+        this.recommendations = recommendations;
+        this.reviews = reviews;
+        this.serviceAddresses = serviceAddresses;
+        this.hasMoreRecommendations = hasMoreRecommendations;
+        this.hasMoreReviews = hasMoreReviews;
+    }
+}
@@ -1,12 +1,18 @@
 package se.magnus.api.core.product;
 
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ProductService {
     @GetMapping(value = "/product/{productId}", produces = "application/json")
     Mono<Product> getProduct(@PathVariable int productId);
 
+    @GetMapping(value = "/product", produces = "application/json")
+    Flux<Product> getProducts(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
     @PostMapping(value = "/product", consumes = "application/json", produces = "application/json")
     Mono<Product> createProduct(@RequestBody Product body);
 
@@ -4,13 +4,27 @@ import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface RecommendationService {
-    @GetMapping(value = "/recommendation", produces = "application/json")
+    @GetMapping(value = "/recommendation", params = {"!productIds", "!pageSize"}, produces = "application/json")
     Flux<Recommendation> getRecommendation(@RequestParam(value = "productId", required = true) int productId);
 
+    @GetMapping(value = "/recommendation", params = {"productIds", "!pageSize"}, produces = "application/json")
+    Flux<Recommendation> getRecommendations(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
+    @GetMapping(value = "/recommendation", params = {"pageSize", "!productIds"}, produces = "application/json")
+    Flux<Recommendation> getRecommendationsPage(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "afterRecommendationId", required = false, defaultValue = "0") int afterRecommendationId,
+            @RequestParam(value = "pageSize", required = true) int pageSize);
+
     @PostMapping(value = "/recommendation", consumes = "application/json", produces = "application/json")
     Mono<Recommendation> createRecommendation(@RequestBody Recommendation body);
 
+    @PostMapping(value = "/recommendation/batch", consumes = "application/json", produces = "application/json")
+    Flux<Recommendation> createRecommendations(@RequestBody List<Recommendation> body);
+
     @DeleteMapping(value = "recommendation")
     Mono<Void> deleteRecommendation(@RequestParam(value = "productId", required = true) int productId);
 }
@@ -22,6 +22,11 @@ public class Review {
         serviceAddress = null;
     }
 
+    // Used by JPQL constructor expressions, which read reviews straight into this type
+    public Review(int productId, int reviewId, String author, String subject, String content) {
+        this(productId, reviewId, author, subject, content, null);
+    }
+
     public Review(int productId, int reviewId, String author, String subject, String content, String serviceAddress) {
         this.productId = productId;
         this.reviewId = reviewId;
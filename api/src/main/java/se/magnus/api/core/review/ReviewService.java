@@ -4,13 +4,27 @@ import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 public interface ReviewService {
-    @GetMapping(value = "/review", produces = "application/json")
+    @GetMapping(value = "/review", params = {"!productIds", "!pageSize"}, produces = "application/json")
     Flux<Review> getReviews(@RequestParam(value = "productId", required = true) int productId);
 
+    @GetMapping(value = "/review", params = {"productIds", "!pageSize"}, produces = "application/json")
+    Flux<Review> getReviews(@RequestParam(value = "productIds", required = true) List<Integer> productIds);
+
+    @GetMapping(value = "/review", params = {"pageSize", "!productIds"}, produces = "application/json")
+    Flux<Review> getReviewsPage(
+            @RequestParam(value = "productId", required = true) int productId,
+            @RequestParam(value = "afterReviewId", required = false, defaultValue = "0") int afterReviewId,
+            @RequestParam(value = "pageSize", required = true) int pageSize);
+
     @PostMapping(value = "review", consumes = "application/json", produces = "application/json")
     Mono<Review> createReview(@RequestBody Review body);
 
+    @PostMapping(value = "/review/batch", consumes = "application/json", produces = "application/json")
+    Flux<Review> createReviews(@RequestBody List<Review> body);
+
     @DeleteMapping(value = "/review")
     Mono<Void> deleteReviews(@RequestParam(value = "productId", required = true) int productId);
 }
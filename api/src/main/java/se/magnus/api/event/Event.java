@@ -1,35 +1,61 @@
 package se.magnus.api.event;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.datatype.jsr310.ser.ZonedDateTimeSerializer;
 
 import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
 
 import static java.time.ZonedDateTime.now;
 
 
 public class Event<K, T> {
-    public enum Type {CREATE, DELETE}
+    public enum Type {CREATE, CREATE_BATCH, DELETE}
 
+    private UUID eventId;
     private Event.Type eventType;
     private K key;
     private T data;
+    private List<T> batch;
     private ZonedDateTime eventCreatedAt;
 
     public Event() {
+        this.eventId = null;
         this.eventType = null;
         this.key = null;
         this.data = null;
+        this.batch = null;
         this.eventCreatedAt = null;
     }
 
     public Event(Type eventType, K key, T data) {
+        this.eventId = UUID.randomUUID();
         this.eventType = eventType;
         this.key = key;
         this.data = data;
+        this.batch = null;
         this.eventCreatedAt = now();
     }
 
+    private Event(K key, List<T> batch) {
+        this.eventId = UUID.randomUUID();
+        this.eventType = Type.CREATE_BATCH;
+        this.key = key;
+        this.data = null;
+        this.batch = batch;
+        this.eventCreatedAt = now();
+    }
+
+    public static <K, T> Event<K, T> createBatch(K key, List<T> batch) {
+        return new Event<>(key, batch);
+    }
+
+    public UUID getEventId() {
+        return eventId;
+    }
+
     public Type getEventType() {
         return eventType;
     }
@@ -42,6 +68,11 @@ public class Event<K, T> {
         return data;
     }
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public List<T> getBatch() {
+        return batch;
+    }
+
     @JsonSerialize(using = ZonedDateTimeSerializer.class)
     public ZonedDateTime getEventCreatedAt() {
         return eventCreatedAt;
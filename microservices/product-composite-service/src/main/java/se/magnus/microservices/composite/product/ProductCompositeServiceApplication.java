@@ -11,6 +11,9 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
+import se.magnus.microservices.composite.product.services.DeadlinePropagationFilterFunction;
+import se.magnus.microservices.composite.product.services.HedgingExchangeFilterFunction;
+import se.magnus.util.reactor.VirtualThreadSchedulers;
 
 @SpringBootApplication
 @ComponentScan("se.magnus")
@@ -19,13 +22,19 @@ public class ProductCompositeServiceApplication {
 
     private final Integer threadPoolSize;
     private final Integer taskQueueSize;
+    private final boolean virtualThreads;
+    private final Integer publishMaxConcurrency;
 
     @Autowired
     public ProductCompositeServiceApplication(
             @Value("${app.threadPoolSize:10}") Integer threadPoolSize,
-            @Value("${app.taskQueueSize:100}") Integer taskQueueSize) {
+            @Value("${app.taskQueueSize:100}") Integer taskQueueSize,
+            @Value("${app.scheduler.virtual-threads:false}") boolean virtualThreads,
+            @Value("${app.scheduler.publish-max-concurrency:1000}") Integer publishMaxConcurrency) {
         this.threadPoolSize = threadPoolSize;
         this.taskQueueSize = taskQueueSize;
+        this.virtualThreads = virtualThreads;
+        this.publishMaxConcurrency = publishMaxConcurrency;
     }
 
     public static void main(String[] args) {
@@ -35,13 +44,22 @@ public class ProductCompositeServiceApplication {
 
     @Bean
     public Scheduler publishEventScheduler() {
+        if (virtualThreads) {
+            log.info("Creates a virtual thread messagingScheduler with maxConcurrency = {}", publishMaxConcurrency);
+            return VirtualThreadSchedulers.newConcurrencyLimited("publish", publishMaxConcurrency);
+        }
         log.info("Creates a messagingScheduler with connectionPoolSize = {}", threadPoolSize);
         return Schedulers.newBoundedElastic(threadPoolSize, taskQueueSize, "publish-pool");
     }
 
     @Bean
     @LoadBalanced
-    public WebClient.Builder loadBalancedWebClientBuilder() {
-        return WebClient.builder();
+    public WebClient.Builder loadBalancedWebClientBuilder(
+            DeadlinePropagationFilterFunction deadlineFilter,
+            HedgingExchangeFilterFunction hedgingFilter) {
+        // Registered before the load balancer filter, so that every hedged attempt picks its own instance
+        return WebClient.builder()
+                .filter(deadlineFilter)
+                .filter(hedgingFilter);
     }
 }
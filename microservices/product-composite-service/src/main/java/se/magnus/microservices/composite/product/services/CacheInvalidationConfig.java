@@ -0,0 +1,43 @@
+package se.magnus.microservices.composite.product.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import se.magnus.api.event.Event;
+
+import java.util.function.Consumer;
+
+@Configuration
+@Slf4j
+public class CacheInvalidationConfig {
+    private final ProductAggregateCache cache;
+
+    @Autowired
+    public CacheInvalidationConfig(ProductAggregateCache cache) {
+        this.cache = cache;
+    }
+
+    @Bean
+    public Consumer<Event<Integer, Object>> productsCacheInvalidator() {
+        return this::invalidate;
+    }
+
+    @Bean
+    public Consumer<Event<Integer, Object>> recommendationsCacheInvalidator() {
+        return this::invalidate;
+    }
+
+    @Bean
+    public Consumer<Event<Integer, Object>> reviewsCacheInvalidator() {
+        return this::invalidate;
+    }
+
+    private void invalidate(Event<Integer, Object> event) {
+        if (event.getKey() == null) {
+            log.warn("Got a {} event without a key, can't invalidate the aggregate cache", event.getEventType());
+            return;
+        }
+        cache.invalidate(event.getKey());
+    }
+}
@@ -0,0 +1,43 @@
+package se.magnus.microservices.composite.product.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import se.magnus.util.exceptions.DeadlineExceededException;
+import se.magnus.util.http.RequestDeadline;
+
+import java.time.Duration;
+import java.time.Instant;
+
+@Component
+@Slf4j
+public class DeadlinePropagationFilterFunction implements ExchangeFilterFunction {
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(context -> RequestDeadline.fromContext(context)
+                .map(deadline -> exchangeWithDeadline(request, next, deadline))
+                .orElseGet(() -> next.exchange(request)));
+    }
+
+    private Mono<ClientResponse> exchangeWithDeadline(ClientRequest request, ExchangeFunction next, Instant deadline) {
+        Duration remaining = Duration.between(Instant.now(), deadline);
+        if (remaining.isNegative() || remaining.isZero()) {
+            return Mono.error(new DeadlineExceededException("Request deadline exceeded before calling " + request.url()));
+        }
+
+        ClientRequest requestWithDeadline = ClientRequest.from(request)
+                .header(RequestDeadline.HEADER, RequestDeadline.toHeaderValue(deadline))
+                .build();
+
+        return next.exchange(requestWithDeadline)
+                .timeout(remaining, Mono.error(() -> {
+                    log.debug("No response from {} within the remaining {} ms", request.url(), remaining.toMillis());
+                    return new DeadlineExceededException("Request deadline exceeded while calling " + request.url());
+                }));
+    }
+}
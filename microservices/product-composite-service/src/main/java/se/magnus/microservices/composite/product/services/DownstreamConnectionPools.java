@@ -0,0 +1,77 @@
+package se.magnus.microservices.composite.product.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Every downstream service gets its own connection pool, so a slow service cannot exhaust the
+// connections of the others. Settings under app.downstream.pool apply to all pools and can be
+// overridden per service under app.downstream.<service>
+@Component
+@Slf4j
+public class DownstreamConnectionPools implements DisposableBean {
+    private static final String PROPERTY_PREFIX = "app.downstream";
+
+    private final Environment environment;
+    private final boolean h2c;
+    private final Map<String, ConnectionProvider> connectionProviders = new ConcurrentHashMap<>();
+
+    @Autowired
+    public DownstreamConnectionPools(Environment environment) {
+        this.environment = environment;
+        this.h2c = environment.getProperty(PROPERTY_PREFIX + ".h2c", Boolean.class, false);
+    }
+
+    public ClientHttpConnector connector(String service) {
+        HttpClient httpClient = HttpClient.create(connectionProvider(service))
+                .protocol(h2c ? HttpProtocol.H2C : HttpProtocol.HTTP11);
+        return new ReactorClientHttpConnector(httpClient);
+    }
+
+    public ConnectionProvider connectionProvider(String service) {
+        return connectionProviders.computeIfAbsent(service, this::createConnectionProvider);
+    }
+
+    private ConnectionProvider createConnectionProvider(String service) {
+        int maxConnections = property(service, "max-connections", Integer.class, 50);
+        int pendingAcquireMaxCount = property(service, "pending-acquire-max-count", Integer.class, 500);
+        Duration pendingAcquireTimeout = property(service, "pending-acquire-timeout", Duration.class, Duration.ofSeconds(2));
+        Duration maxIdleTime = property(service, "max-idle-time", Duration.class, Duration.ofSeconds(20));
+        Duration maxLifeTime = property(service, "max-life-time", Duration.class, Duration.ofMinutes(5));
+        Duration evictInBackground = property(service, "evict-in-background", Duration.class, Duration.ofSeconds(30));
+
+        log.info("Creates a connection pool for {} with maxConnections = {}, pendingAcquireMaxCount = {}, maxIdleTime = {}, h2c = {}",
+                service, maxConnections, pendingAcquireMaxCount, maxIdleTime, h2c);
+
+        return ConnectionProvider.builder(service + "-pool")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInBackground)
+                .metrics(true)
+                .build();
+    }
+
+    private <T> T property(String service, String name, Class<T> type, T defaultValue) {
+        T sharedValue = environment.getProperty(PROPERTY_PREFIX + ".pool." + name, type, defaultValue);
+        return environment.getProperty(PROPERTY_PREFIX + "." + service + "." + name, type, sharedValue);
+    }
+
+    @Override
+    public void destroy() {
+        connectionProviders.values().forEach(ConnectionProvider::dispose);
+    }
+}
@@ -0,0 +1,226 @@
+package se.magnus.microservices.composite.product.services;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import se.magnus.api.event.Event;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+// Append-only log of events waiting to be published, one JSON line per event. The relay position is kept
+// in a separate file, so events that were appended but not yet relayed survive a restart. Once everything
+// has been relayed, the log is truncated. A log that never catches up, e.g. under a steady stream of events,
+// is compacted instead once the relayed part passes compactThreshold bytes
+@Slf4j
+public class EventOutbox implements Closeable {
+    private static final String LOG_FILE = "outbox.log";
+    private static final String OFFSET_FILE = "outbox.offset";
+    private static final String COMPACTED_FILE = "outbox.log.compacted";
+    private static final String CORRUPT_FILE = "outbox.corrupt";
+
+    private final ObjectMapper mapper;
+    private final Path logFile;
+    private final Path directory;
+    private final boolean syncOnAppend;
+    private final long compactThreshold;
+    private final FileChannel offsetChannel;
+    private final Object lock = new Object();
+    private FileChannel logChannel;
+    private long relayedOffset;
+
+    // A line that can't be parsed, e.g. left torn by a crash, has no event and keeps the raw line for quarantine()
+    public record Entry(String bindingName, Event<Object, Object> event, @JsonIgnore long endOffset, @JsonIgnore byte[] corruptLine) {
+
+        public boolean isCorrupt() {
+            return corruptLine != null;
+        }
+    }
+
+    public EventOutbox(ObjectMapper mapper, Path directory, boolean syncOnAppend, long compactThreshold) throws IOException {
+        Files.createDirectories(directory);
+        this.mapper = mapper;
+        this.directory = directory;
+        this.logFile = directory.resolve(LOG_FILE);
+        this.syncOnAppend = syncOnAppend;
+        this.compactThreshold = compactThreshold;
+        this.logChannel = FileChannel.open(logFile, CREATE, WRITE, APPEND);
+        this.offsetChannel = FileChannel.open(directory.resolve(OFFSET_FILE), CREATE, READ, WRITE);
+        this.relayedOffset = readRelayedOffset();
+        endTornLine();
+
+        log.info("Opened the event outbox in {}, {} bytes are waiting to be relayed", directory, logChannel.size() - relayedOffset);
+    }
+
+    public void append(String bindingName, Event<?, ?> event) {
+        try {
+            byte[] line = (mapper.writeValueAsString(new Entry(bindingName, (Event<Object, Object>) event, 0, null)) + "\n").getBytes(UTF_8);
+            synchronized (lock) {
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    logChannel.write(buffer);
+                }
+                if (syncOnAppend) {
+                    logChannel.force(false);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append a " + event.getEventType() + " event to the outbox", e);
+        }
+    }
+
+    // Only called from the relay, so reads never race with markRelayed()
+    public List<Entry> readBatch(int maxEntries) {
+        List<Entry> entries = new ArrayList<>();
+        try (FileChannel readChannel = FileChannel.open(logFile, READ)) {
+            long offset = relayedOffset;
+            InputStream in = new BufferedInputStream(Channels.newInputStream(readChannel.position(offset)));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+            int next;
+            while (entries.size() < maxEntries && (next = in.read()) != -1) {
+                offset++;
+                if (next != '\n') {
+                    line.write(next);
+                    continue;
+                }
+                entries.add(parse(line.toByteArray(), offset));
+                line.reset();
+            }
+            // A line without a trailing newline is still being written and is picked up by the next batch
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from the outbox", e);
+        }
+        return entries;
+    }
+
+    public void markRelayed(long offset) {
+        synchronized (lock) {
+            try {
+                relayedOffset = offset;
+                if (relayedOffset == logChannel.size()) {
+                    logChannel.truncate(0);
+                    relayedOffset = 0;
+                } else if (relayedOffset >= compactThreshold) {
+                    compact();
+                    return;
+                }
+                writeRelayedOffset();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to update the relay position of the outbox", e);
+            }
+        }
+    }
+
+    // Keeps a corrupt line for inspection instead of publishing it
+    public void quarantine(Entry entry) {
+        try {
+            byte[] line = Arrays.copyOf(entry.corruptLine(), entry.corruptLine().length + 1);
+            line[line.length - 1] = '\n';
+            Files.write(directory.resolve(CORRUPT_FILE), line, CREATE, WRITE, APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to quarantine a corrupt outbox entry", e);
+        }
+    }
+
+    public long pendingBytes() {
+        synchronized (lock) {
+            try {
+                return logChannel.size() - relayedOffset;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private Entry parse(byte[] line, long endOffset) throws IOException {
+        try {
+            Entry entry = mapper.readValue(line, Entry.class);
+            return new Entry(entry.bindingName(), entry.event(), endOffset, null);
+        } catch (JsonProcessingException e) {
+            log.warn("Found a corrupt entry in the outbox, ending at offset {}: {}", endOffset, e.getOriginalMessage());
+            return new Entry(null, null, endOffset, line);
+        }
+    }
+
+    // Copies the entries that are not yet relayed to a new log that replaces the current one. The relay position is
+    // reset first, so a crash before the new log is in place only relays the old log again, at least once as always
+    private void compact() throws IOException {
+        Path compactedFile = directory.resolve(COMPACTED_FILE);
+        long size = logChannel.size();
+        try (FileChannel readChannel = FileChannel.open(logFile, READ);
+             FileChannel compactedChannel = FileChannel.open(compactedFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            long position = relayedOffset;
+            while (position < size) {
+                position += readChannel.transferTo(position, size - position, compactedChannel);
+            }
+            compactedChannel.force(false);
+        }
+        log.info("Compacts the outbox, drops {} relayed bytes and keeps {}", relayedOffset, size - relayedOffset);
+
+        relayedOffset = 0;
+        writeRelayedOffset();
+        Files.move(compactedFile, logFile, ATOMIC_MOVE);
+        logChannel.close();
+        logChannel = FileChannel.open(logFile, WRITE, APPEND);
+    }
+
+    // A crash in the middle of an append leaves a line without its newline, which the next append would run into.
+    // Ending it turns it into a corrupt line of its own
+    private void endTornLine() throws IOException {
+        long size = logChannel.size();
+        if (size == 0) {
+            return;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        try (FileChannel readChannel = FileChannel.open(logFile, READ)) {
+            readChannel.read(last, size - 1);
+        }
+        if (last.get(0) != '\n') {
+            log.warn("The outbox ends with a torn line, ends it before appending");
+            logChannel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+            logChannel.force(false);
+        }
+    }
+
+    private long readRelayedOffset() throws IOException {
+        if (offsetChannel.size() < Long.BYTES) {
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        offsetChannel.read(buffer, 0);
+        return Math.min(buffer.flip().getLong(), logChannel.size());
+    }
+
+    private void writeRelayedOffset() throws IOException {
+        offsetChannel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, relayedOffset), 0);
+        offsetChannel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        logChannel.close();
+        offsetChannel.close();
+    }
+}
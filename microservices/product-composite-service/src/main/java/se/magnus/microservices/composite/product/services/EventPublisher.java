@@ -0,0 +1,121 @@
+package se.magnus.microservices.composite.product.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.integration.annotation.ServiceActivator;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ErrorMessage;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import se.magnus.api.event.Event;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Publishes events and, if configured, completes the returned Mono only when the broker has confirmed the message.
+// With rabbit, the binder completes the CorrelationData passed in a header once the publisher confirm arrives.
+// With kafka, the binder reports send results to the publishResults channel and failures to the error channels of
+// the output bindings, bridged to publishFailures. Both are correlated back to the pending send by a header. No
+// thread waits for a confirm in either case
+@Component
+@Slf4j
+public class EventPublisher {
+    public static final String SEND_RESULTS_CHANNEL = "publishResults";
+    public static final String SEND_FAILURES_CHANNEL = "publishFailures";
+    static final String CORRELATION_HEADER = "publishCorrelationId";
+
+    enum Confirms {NONE, RABBIT, KAFKA}
+
+    private final StreamBridge streamBridge;
+    private final Confirms confirms;
+    private final Duration confirmTimeout;
+    private final Map<String, CompletableFuture<Void>> pendingSends = new ConcurrentHashMap<>();
+
+    public EventPublisher(
+            StreamBridge streamBridge,
+            @Value("${app.publisher-confirms.mode:none}") String confirms,
+            @Value("${app.publisher-confirms.timeout:10s}") Duration confirmTimeout) {
+        this.streamBridge = streamBridge;
+        this.confirms = Confirms.valueOf(confirms.toUpperCase());
+        this.confirmTimeout = confirmTimeout;
+        log.info("Publishes events with publisher confirms: {}, timeout: {}", this.confirms, confirmTimeout);
+    }
+
+    public Mono<Void> publish(String bindingName, Event<?, ?> event) {
+        return Mono.defer(() -> {
+            MessageBuilder<?> message = MessageBuilder.withPayload(event)
+                    .setHeader("partitionKey", event.getKey());
+            log.debug("Sending a {} message to {}", event.getEventType(), bindingName);
+
+            return switch (confirms) {
+                case NONE -> {
+                    send(bindingName, message.build());
+                    yield Mono.empty();
+                }
+                case RABBIT -> {
+                    CorrelationData correlation = new CorrelationData();
+                    send(bindingName, message.setHeader(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION, correlation).build());
+                    yield Mono.fromFuture(correlation.getFuture())
+                            .flatMap(confirm -> confirm.isAck() ? Mono.<Void>empty() : Mono.error(
+                                    new MessageDeliveryException("The broker rejected a message for " + bindingName + ": " + confirm.getReason())))
+                            .timeout(confirmTimeout);
+                }
+                case KAFKA -> {
+                    String correlationId = UUID.randomUUID().toString();
+                    CompletableFuture<Void> confirmed = new CompletableFuture<>();
+                    pendingSends.put(correlationId, confirmed);
+                    send(bindingName, message.setHeader(CORRELATION_HEADER, correlationId).build());
+                    yield Mono.fromFuture(confirmed)
+                            .timeout(confirmTimeout)
+                            .doFinally(signal -> pendingSends.remove(correlationId));
+                }
+            };
+        });
+    }
+
+    @ServiceActivator(inputChannel = SEND_RESULTS_CHANNEL)
+    public void onSendResult(Message<?> result) {
+        CompletableFuture<Void> confirmed = pendingSend(result);
+        if (confirmed != null) {
+            confirmed.complete(null);
+        }
+    }
+
+    @ServiceActivator(inputChannel = SEND_FAILURES_CHANNEL)
+    public void onSendFailure(ErrorMessage error) {
+        if (error.getPayload() instanceof MessagingException failure && failure.getFailedMessage() != null) {
+            CompletableFuture<Void> confirmed = pendingSend(failure.getFailedMessage());
+            if (confirmed != null) {
+                confirmed.completeExceptionally(failure);
+            }
+        }
+    }
+
+    public boolean awaitsConfirms() {
+        return confirms != Confirms.NONE;
+    }
+
+    private CompletableFuture<Void> pendingSend(Message<?> message) {
+        Object correlationId = message.getHeaders().get(CORRELATION_HEADER);
+        if (correlationId instanceof byte[] bytes) {
+            // Headers that went through the Kafka header mapper come back as raw bytes
+            correlationId = new String(bytes);
+        }
+        return correlationId == null ? null : pendingSends.get(correlationId.toString());
+    }
+
+    private void send(String bindingName, Message<?> message) {
+        if (!streamBridge.send(bindingName, message)) {
+            throw new MessageDeliveryException(message, "The binder did not accept a message for " + bindingName);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package se.magnus.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Component
+@Slf4j
+public class HedgingExchangeFilterFunction implements ExchangeFilterFunction {
+    private static final long DELAY_REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final double percentile;
+    private final Duration minDelay;
+    private final Duration maxDelay;
+    private final int maxHedgesInFlight;
+
+    private final AtomicInteger hedgesInFlight = new AtomicInteger();
+    private final ConcurrentMap<String, ServiceLatency> latencies = new ConcurrentHashMap<>();
+
+    @Autowired
+    public HedgingExchangeFilterFunction(
+            MeterRegistry meterRegistry,
+            @Value("${app.hedging.enabled:false}") boolean enabled,
+            @Value("${app.hedging.percentile:0.95}") double percentile,
+            @Value("${app.hedging.min-delay:20ms}") Duration minDelay,
+            @Value("${app.hedging.max-delay:1s}") Duration maxDelay,
+            @Value("${app.hedging.max-in-flight:10}") int maxHedgesInFlight) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.maxDelay = maxDelay;
+        this.maxHedgesInFlight = maxHedgesInFlight;
+
+        meterRegistry.gauge("composite.hedging.in-flight", hedgesInFlight);
+        log.info("Creates a hedging filter, enabled = {}, percentile = {}, delay = {}..{}, maxHedgesInFlight = {}",
+                enabled, percentile, minDelay, maxDelay, maxHedgesInFlight);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (!enabled || !HttpMethod.GET.equals(request.method())) {
+            return next.exchange(request);
+        }
+
+        String service = request.url().getHost();
+        ServiceLatency latency = latencies.computeIfAbsent(service, ServiceLatency::new);
+        Duration delay = latency.hedgeDelay();
+
+        return Mono.create(sink -> {
+            HedgedCall call = new HedgedCall(sink, service);
+            sink.onDispose(call);
+
+            call.start(timedExchange(request, next, latency), false);
+            call.add(Mono.delay(delay).subscribe(tick -> {
+                if (call.isDone()) {
+                    return;
+                }
+                if (hedgesInFlight.incrementAndGet() > maxHedgesInFlight) {
+                    hedgesInFlight.decrementAndGet();
+                    meterRegistry.counter("composite.hedging.rejected", "service", service).increment();
+                    return;
+                }
+
+                log.debug("No response from {} within {} ms, sends a hedged request", service, delay.toMillis());
+                meterRegistry.counter("composite.hedging.sent", "service", service).increment();
+                call.start(timedExchange(request, next, latency).doFinally(signal -> hedgesInFlight.decrementAndGet()), true);
+            }));
+        });
+    }
+
+    private Mono<ClientResponse> timedExchange(ClientRequest request, ExchangeFunction next, ServiceLatency latency) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            Runnable record = () -> {
+                if (recorded.compareAndSet(false, true)) {
+                    latency.timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            };
+            // A cancelled attempt, e.g. the loser of a hedge, is recorded at the time it had taken so far. Leaving
+            // out the slow attempts would pull the percentile, and with it the hedge delay, further down every second
+            return next.exchange(request)
+                    .doOnNext(response -> record.run())
+                    .doOnCancel(record);
+        });
+    }
+
+    private class ServiceLatency {
+        private final Timer timer;
+        private volatile Duration delay;
+        private volatile long delayRefreshedAt;
+
+        ServiceLatency(String service) {
+            this.timer = Timer.builder("composite.downstream.latency")
+                    .description("Time until response headers are received from a downstream service")
+                    .tag("service", service)
+                    .publishPercentiles(percentile)
+                    .distributionStatisticExpiry(Duration.ofMinutes(1))
+                    .register(meterRegistry);
+            this.delay = maxDelay;
+            this.delayRefreshedAt = System.nanoTime();
+        }
+
+        Duration hedgeDelay() {
+            long now = System.nanoTime();
+            if (now - delayRefreshedAt > DELAY_REFRESH_INTERVAL_NANOS) {
+                delayRefreshedAt = now;
+                delay = computeDelay();
+            }
+            return delay;
+        }
+
+        private Duration computeDelay() {
+            double nanos = 0;
+            for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+                nanos = value.value(TimeUnit.NANOSECONDS);
+            }
+            if (nanos <= 0) {
+                return maxDelay;
+            }
+
+            Duration percentileDelay = Duration.ofNanos((long) nanos);
+            if (percentileDelay.compareTo(minDelay) < 0) {
+                return minDelay;
+            }
+            return percentileDelay.compareTo(maxDelay) > 0 ? maxDelay : percentileDelay;
+        }
+    }
+
+    private class HedgedCall implements Disposable {
+        private final MonoSink<ClientResponse> sink;
+        private final String service;
+        private final Disposable.Composite subscriptions = Disposables.composite();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        HedgedCall(MonoSink<ClientResponse> sink, String service) {
+            this.sink = sink;
+            this.service = service;
+        }
+
+        void start(Mono<ClientResponse> attempt, boolean hedge) {
+            outstanding.incrementAndGet();
+            add(attempt.contextWrite(sink.contextView())
+                    .subscribe(response -> onResponse(response, hedge), this::onError));
+        }
+
+        void add(Disposable subscription) {
+            subscriptions.add(subscription);
+        }
+
+        boolean isDone() {
+            return done.get();
+        }
+
+        private void onResponse(ClientResponse response, boolean hedge) {
+            if (done.compareAndSet(false, true)) {
+                if (hedge) {
+                    meterRegistry.counter("composite.hedging.won", "service", service).increment();
+                }
+                sink.success(response);
+            } else {
+                response.releaseBody().subscribe();
+            }
+        }
+
+        private void onError(Throwable error) {
+            if (outstanding.decrementAndGet() == 0 && done.compareAndSet(false, true)) {
+                sink.error(error);
+            }
+        }
+
+        @Override
+        public void dispose() {
+            subscriptions.dispose();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return subscriptions.isDisposed();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package se.magnus.microservices.composite.product.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "app.outbox.enabled", havingValue = "true")
+public class OutboxConfig {
+
+    @Bean
+    public EventOutbox eventOutbox(
+            ObjectMapper mapper,
+            @Value("${app.outbox.directory:./outbox}") Path directory,
+            @Value("${app.outbox.sync-on-append:false}") boolean syncOnAppend,
+            @Value("${app.outbox.compact-threshold:64MB}") DataSize compactThreshold) throws IOException {
+        return new EventOutbox(mapper, directory, syncOnAppend, compactThreshold.toBytes());
+    }
+
+    @Bean
+    public OutboxRelay outboxRelay(
+            EventOutbox eventOutbox,
+            EventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${app.outbox.batch-size:100}") int batchSize,
+            @Value("${app.outbox.poll-interval:50ms}") Duration pollInterval) {
+        return new OutboxRelay(eventOutbox, eventPublisher, meterRegistry, batchSize, pollInterval);
+    }
+}
@@ -0,0 +1,103 @@
+package se.magnus.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Drains the outbox to the message broker in batches. The events of a batch are sent without waiting for each other,
+// but the relay position is only moved past the longest run of events that the broker has confirmed, so events are
+// published at least once, also across broker outages and restarts
+@Slf4j
+public class OutboxRelay implements InitializingBean, DisposableBean {
+    private final EventOutbox outbox;
+    private final EventPublisher eventPublisher;
+    private final int batchSize;
+    private final Duration pollInterval;
+    private final Counter relayedEvents;
+    private final Counter failedBatches;
+    private final Counter corruptEntries;
+    // A bounded elastic worker, since the relay blocks while it waits for the confirms of a batch
+    private final Scheduler scheduler = Schedulers.newBoundedElastic(1, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "outbox-relay");
+    private Disposable relay;
+
+    public OutboxRelay(EventOutbox outbox, EventPublisher eventPublisher, MeterRegistry meterRegistry, int batchSize, Duration pollInterval) {
+        this.outbox = outbox;
+        this.eventPublisher = eventPublisher;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+        this.relayedEvents = meterRegistry.counter("outbox.relayed.events");
+        this.failedBatches = meterRegistry.counter("outbox.failed.batches");
+        this.corruptEntries = meterRegistry.counter("outbox.corrupt.entries");
+        Gauge.builder("outbox.pending.bytes", outbox, EventOutbox::pendingBytes).register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        log.info("Starts the outbox relay, batchSize: {}, pollInterval: {}", batchSize, pollInterval);
+        relay = Flux.interval(pollInterval, scheduler)
+                .onBackpressureDrop()
+                .subscribe(tick -> drain(), error -> log.error("The outbox relay stopped", error));
+    }
+
+    // Synchronized, so destroy() waits for a drain that is in flight before it drains for the last time
+    synchronized void drain() {
+        try {
+            while (relayBatch() == batchSize) {
+                // A full batch, there may be more
+            }
+        } catch (RuntimeException e) {
+            failedBatches.increment();
+            log.warn("Failed to relay events from the outbox, retries in {}: {}", pollInterval, e.toString());
+        }
+    }
+
+    private int relayBatch() {
+        List<EventOutbox.Entry> batch = outbox.readBatch(batchSize);
+        AtomicLong relayedOffset = new AtomicLong(-1);
+        try {
+            Flux.fromIterable(batch)
+                    .flatMapSequential(entry -> entry.isCorrupt()
+                            ? Mono.just(entry)
+                            : eventPublisher.publish(entry.bindingName(), entry.event()).thenReturn(entry), batchSize)
+                    // In order, so a corrupt entry is only moved aside once everything before it is published
+                    .doOnNext(entry -> {
+                        if (entry.isCorrupt()) {
+                            outbox.quarantine(entry);
+                            corruptEntries.increment();
+                        } else {
+                            relayedEvents.increment();
+                        }
+                        relayedOffset.set(entry.endOffset());
+                    })
+                    .then()
+                    .block();
+        } finally {
+            if (relayedOffset.get() >= 0) {
+                outbox.markRelayed(relayedOffset.get());
+            }
+        }
+        return batch.size();
+    }
+
+    @Override
+    public void destroy() {
+        if (relay != null) {
+            relay.dispose();
+        }
+        // Whatever is left in the outbox is relayed after the next start
+        drain();
+        scheduler.dispose();
+    }
+}
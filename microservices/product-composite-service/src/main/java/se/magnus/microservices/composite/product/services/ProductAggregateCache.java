@@ -0,0 +1,27 @@
+package se.magnus.microservices.composite.product.services;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.magnus.api.composite.product.ProductAggregate;
+import se.magnus.util.messaging.InvalidatedCache;
+
+import java.time.Duration;
+
+@Component
+public class ProductAggregateCache extends InvalidatedCache<Integer, ProductAggregate> {
+
+    @Autowired
+    public ProductAggregateCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.aggregate-cache.enabled:true}") boolean enabled,
+            @Value("${app.aggregate-cache.maximum-size:10000}") long maximumSize,
+            @Value("${app.aggregate-cache.expire-after-write:30s}") Duration expireAfterWrite) {
+        super("productAggregateCache", Caffeine.newBuilder()
+                        .maximumSize(maximumSize)
+                        .expireAfterWrite(expireAfterWrite),
+                meterRegistry, enabled);
+    }
+}
@@ -1,14 +1,13 @@
 package se.magnus.microservices.composite.product.services;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatusCode;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -23,15 +22,20 @@ import se.magnus.api.core.recommendation.RecommendationService;
 import se.magnus.api.core.review.Review;
 import se.magnus.api.core.review.ReviewService;
 import se.magnus.api.event.Event;
+import se.magnus.util.exceptions.DeadlineExceededException;
 import se.magnus.util.exceptions.InvalidInputException;
 import se.magnus.util.exceptions.NotFoundException;
 import se.magnus.util.http.HttpErrorInfo;
+import se.magnus.util.reactor.ReactiveInstrumentation;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
 import static org.springframework.http.HttpStatus.UNPROCESSABLE_ENTITY;
-import static reactor.core.publisher.Mono.empty;
 import static se.magnus.api.event.Event.Type.CREATE;
 import static se.magnus.api.event.Event.Type.DELETE;
 
@@ -45,20 +49,51 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
     private static final String RECOMMENDATION_SERVICE_URL = "http://recommendation";
     private static final String REVIEW_SERVICE_URL = "http://review";
 
-    private final WebClient webClient;
-    private final StreamBridge streamBridge;
+    private final WebClient productClient;
+    private final WebClient recommendationClient;
+    private final WebClient reviewClient;
+    private final EventPublisher eventPublisher;
+    private final EventOutbox outbox;
     private final Scheduler publishEventScheduler;
+    private final ReactiveInstrumentation instrumentation;
+
+    private final RequestCoalescer<Integer, Product> productCoalescer;
+    private final RequestCoalescer<Integer, Recommendation> recommendationCoalescer;
+    private final RequestCoalescer<Integer, Review> reviewCoalescer;
+    private final RequestCoalescer<PageKey, Recommendation> recommendationPageCoalescer;
+    private final RequestCoalescer<PageKey, Review> reviewPageCoalescer;
+
+    private record PageKey(int productId, int afterId, int pageSize) {
+    }
 
     @Autowired
     public ProductCompositeIntegration(
             ObjectMapper mapper,
             @Qualifier("publishEventScheduler") Scheduler publishEventScheduler,
             WebClient.Builder webClient,
-            StreamBridge streamBridge) {
+            DownstreamConnectionPools connectionPools,
+            EventPublisher eventPublisher,
+            Optional<EventOutbox> outbox,
+            ProductAggregateCache aggregateCache,
+            MeterRegistry meterRegistry,
+            ReactiveInstrumentation instrumentation,
+            @Value("${app.request-coalescing.enabled:true}") boolean requestCoalescingEnabled) {
         this.publishEventScheduler = publishEventScheduler;
+        this.outbox = outbox.orElse(null);
+        this.instrumentation = instrumentation;
         this.mapper = mapper;
-        this.webClient = webClient.build();
-        this.streamBridge = streamBridge;
+        this.productClient = webClient.clone().clientConnector(connectionPools.connector("product")).build();
+        this.recommendationClient = webClient.clone().clientConnector(connectionPools.connector("recommendation")).build();
+        this.reviewClient = webClient.clone().clientConnector(connectionPools.connector("review")).build();
+        this.eventPublisher = eventPublisher;
+        // Reads that go into an aggregate are only shared within one generation of its cache entry
+        this.productCoalescer = new RequestCoalescer<>("product", meterRegistry, requestCoalescingEnabled, aggregateCache::generation);
+        this.recommendationCoalescer = new RequestCoalescer<>("recommendation", meterRegistry, requestCoalescingEnabled, aggregateCache::generation);
+        this.reviewCoalescer = new RequestCoalescer<>("review", meterRegistry, requestCoalescingEnabled, aggregateCache::generation);
+        this.recommendationPageCoalescer = new RequestCoalescer<>("recommendation-page", meterRegistry, requestCoalescingEnabled,
+                key -> aggregateCache.generation(key.productId()));
+        this.reviewPageCoalescer = new RequestCoalescer<>("review-page", meterRegistry, requestCoalescingEnabled,
+                key -> aggregateCache.generation(key.productId()));
     }
 
     @Override
@@ -66,10 +101,22 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         String url = PRODUCT_SERVICE_URL + "/product/" + productId;
         LOG.debug("Will call getProduct API on URL: {}", url);
 
-        return webClient.get().uri(url)
+        return productCoalescer.mono(productId, () -> productClient.get().uri(url)
                 .retrieve()
                 .bodyToMono(Product.class)
-                .log()
+                .transform(instrumentation.mono("integration.get-product"))
+                .onErrorMap(WebClientResponseException.class, this::handleException));
+    }
+
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        String url = PRODUCT_SERVICE_URL + "/product?productIds=" + joinProductIds(productIds);
+        LOG.debug("Will call getProducts API on URL: {}", url);
+
+        return productClient.get().uri(url)
+                .retrieve()
+                .bodyToFlux(Product.class)
+                .transform(instrumentation.flux("integration.get-products"))
                 .onErrorMap(WebClientResponseException.class, this::handleException);
     }
 
@@ -85,6 +132,8 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
             return new NotFoundException(getErrorMessage(wcre));
         } else if (statusCode.equals(UNPROCESSABLE_ENTITY)) {
             return new InvalidInputException(getErrorMessage(wcre));
+        } else if (statusCode.equals(GATEWAY_TIMEOUT)) {
+            return new DeadlineExceededException(getErrorMessage(wcre));
         }
         LOG.warn("Got a unexpected HTTP error: {}, will rethrow it", wcre.getStatusCode());
         LOG.warn("Error body: {}", wcre.getResponseBodyAsString());
@@ -101,18 +150,13 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
 
     @Override
     public Mono<Product> createProduct(Product body) {
-        return Mono.fromCallable(() -> {
-            sendMessage("products-out-0", new Event(CREATE, body.getProductId(), body));
-            return body;
-        }).subscribeOn(publishEventScheduler);
+        return sendMessage("products-out-0", new Event(CREATE, body.getProductId(), body)).thenReturn(body);
     }
 
 
     @Override
     public Mono<Void> deleteProduct(int productId) {
-        return Mono.fromRunnable(() -> {
-            sendMessage("products-out-0", new Event(DELETE, productId, null));
-        }).subscribeOn(publishEventScheduler).then();
+        return sendMessage("products-out-0", new Event(DELETE, productId, null));
     }
 
 
@@ -129,25 +173,50 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         String url = RECOMMENDATION_SERVICE_URL + "/recommendation?productId=" + productId;
         LOG.debug("will call getRecommendation API on URL: {}", url);
 
-        return webClient.get().uri(url)
+        return recommendationCoalescer.flux(productId, () -> recommendationClient.get().uri(url)
+                .retrieve()
+                .bodyToFlux(Recommendation.class)
+                .transform(instrumentation.flux("integration.get-recommendation"))
+                .onErrorMap(WebClientResponseException.class, this::handleException));
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(List<Integer> productIds) {
+        String url = RECOMMENDATION_SERVICE_URL + "/recommendation?productIds=" + joinProductIds(productIds);
+        LOG.debug("will call getRecommendations API on URL: {}", url);
+
+        return recommendationClient.get().uri(url)
                 .retrieve()
                 .bodyToFlux(Recommendation.class)
-                .log()
-                .onErrorResume(error -> empty());
+                .transform(instrumentation.flux("integration.get-recommendations"))
+                .onErrorMap(WebClientResponseException.class, this::handleException);
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendationsPage(int productId, int afterRecommendationId, int pageSize) {
+        String url = RECOMMENDATION_SERVICE_URL + "/recommendation?productId=" + productId + "&afterRecommendationId=" + afterRecommendationId + "&pageSize=" + pageSize;
+        LOG.debug("will call getRecommendationsPage API on URL: {}", url);
+
+        return recommendationPageCoalescer.flux(new PageKey(productId, afterRecommendationId, pageSize), () -> recommendationClient.get().uri(url)
+                .retrieve()
+                .bodyToFlux(Recommendation.class)
+                .transform(instrumentation.flux("integration.get-recommendations-page"))
+                .onErrorMap(WebClientResponseException.class, this::handleException));
     }
 
     @Override
     public Mono<Recommendation> createRecommendation(Recommendation body) {
-        return Mono.fromCallable(() -> {
-            sendMessage("recommendations-out-0", new Event(CREATE, body.getProductId(), body));
-            return body;
-        }).subscribeOn(publishEventScheduler);
+        return sendMessage("recommendations-out-0", new Event(CREATE, body.getProductId(), body)).thenReturn(body);
+    }
+
+    @Override
+    public Flux<Recommendation> createRecommendations(List<Recommendation> body) {
+        return sendMessage("recommendations-out-0", Event.createBatch(body.get(0).getProductId(), body)).thenMany(Flux.fromIterable(body));
     }
 
     @Override
     public Mono<Void> deleteRecommendation(int productId) {
-        return Mono.fromRunnable(() -> sendMessage("recommendations-out-0", new Event(DELETE, productId, null)))
-                .subscribeOn(publishEventScheduler).then();
+        return sendMessage("recommendations-out-0", new Event(DELETE, productId, null));
     }
 
     @Override
@@ -155,25 +224,50 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         String url = REVIEW_SERVICE_URL + "/review?productId=" + productId;
         LOG.debug("will call getReviews API on URL: {}", url);
 
-        return webClient.get().uri(url)
+        return reviewCoalescer.flux(productId, () -> reviewClient.get().uri(url)
+                .retrieve()
+                .bodyToFlux(Review.class)
+                .transform(instrumentation.flux("integration.get-reviews"))
+                .onErrorMap(WebClientResponseException.class, this::handleException));
+    }
+
+    @Override
+    public Flux<Review> getReviews(List<Integer> productIds) {
+        String url = REVIEW_SERVICE_URL + "/review?productIds=" + joinProductIds(productIds);
+        LOG.debug("will call getReviews API on URL: {}", url);
+
+        return reviewClient.get().uri(url)
+                .retrieve()
+                .bodyToFlux(Review.class)
+                .transform(instrumentation.flux("integration.get-reviews-batch"))
+                .onErrorMap(WebClientResponseException.class, this::handleException);
+    }
+
+    @Override
+    public Flux<Review> getReviewsPage(int productId, int afterReviewId, int pageSize) {
+        String url = REVIEW_SERVICE_URL + "/review?productId=" + productId + "&afterReviewId=" + afterReviewId + "&pageSize=" + pageSize;
+        LOG.debug("will call getReviewsPage API on URL: {}", url);
+
+        return reviewPageCoalescer.flux(new PageKey(productId, afterReviewId, pageSize), () -> reviewClient.get().uri(url)
                 .retrieve()
                 .bodyToFlux(Review.class)
-                .log()
-                .onErrorResume(error -> empty());
+                .transform(instrumentation.flux("integration.get-reviews-page"))
+                .onErrorMap(WebClientResponseException.class, this::handleException));
     }
 
     @Override
     public Mono<Review> createReview(Review body) {
-        return Mono.fromCallable(() -> {
-            sendMessage("reviews-out-0", new Event(CREATE, body.getProductId(), body));
-            return body;
-        }).subscribeOn(publishEventScheduler);
+        return sendMessage("reviews-out-0", new Event(CREATE, body.getProductId(), body)).thenReturn(body);
+    }
+
+    @Override
+    public Flux<Review> createReviews(List<Review> body) {
+        return sendMessage("reviews-out-0", Event.createBatch(body.get(0).getProductId(), body)).thenMany(Flux.fromIterable(body));
     }
 
     @Override
     public Mono<Void> deleteReviews(int productId) {
-        return Mono.fromRunnable(() -> sendMessage("reviews-out-0", new Event(DELETE, productId, null)))
-                .subscribeOn(publishEventScheduler).then();
+        return sendMessage("reviews-out-0", new Event(DELETE, productId, null));
     }
 
     private RuntimeException handleHttpClientException(HttpClientErrorException e) {
@@ -188,11 +282,21 @@ public class ProductCompositeIntegration implements ProductService, Recommendati
         return e;
     }
 
-    private void sendMessage(String bindingName, Event event) {
-        LOG.debug("Sending a {} message to {}", event.getEventType(), bindingName);
-        Message message = MessageBuilder.withPayload(event)
-                .setHeader("partitionKey", event.getKey())
-                .build();
-        streamBridge.send(bindingName, message);
+    private String joinProductIds(List<Integer> productIds) {
+        return productIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    // Appending to the outbox is file I/O, with a force() when sync-on-append is set, so it runs on the publish-pool
+    // rather than on the event loop. So does a send without confirms. With confirms the binder only gets the message
+    // handed over, and the wait for the confirm does not hold a thread, so the send stays on the calling thread
+    private Mono<Void> sendMessage(String bindingName, Event event) {
+        if (outbox != null) {
+            return Mono.<Void>fromRunnable(() -> {
+                LOG.debug("Appending a {} message for {} to the outbox", event.getEventType(), bindingName);
+                outbox.append(bindingName, event);
+            }).subscribeOn(publishEventScheduler);
+        }
+        Mono<Void> publish = eventPublisher.publish(bindingName, event);
+        return eventPublisher.awaitsConfirms() ? publish : publish.subscribeOn(publishEventScheduler);
     }
 }
@@ -2,73 +2,234 @@ package se.magnus.microservices.composite.product.services;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import se.magnus.api.composite.product.*;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.core.recommendation.Recommendation;
 import se.magnus.api.core.review.Review;
+import se.magnus.util.exceptions.DeadlineExceededException;
+import se.magnus.util.exceptions.InvalidInputException;
 import se.magnus.util.http.ServiceUtil;
+import se.magnus.util.reactor.ReactiveInstrumentation;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
-import java.util.logging.Level;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @RestController
 @Slf4j
 public class ProductCompositeServiceImpl implements ProductCompositeService {
+    private static final String FIELD_PRODUCT = "product";
+    private static final String FIELD_RECOMMENDATIONS = "recommendations";
+    private static final String FIELD_REVIEWS = "reviews";
+    private static final Set<String> ALL_FIELDS = Set.of(FIELD_PRODUCT, FIELD_RECOMMENDATIONS, FIELD_REVIEWS);
+
     private final ServiceUtil serviceUtil;
     private final ProductCompositeIntegration integration;
+    private final ProductAggregateCache cache;
+    private final ReactiveInstrumentation instrumentation;
+    private final int maxBatchSize;
+    private final int eventBatchSize;
+    private final int aggregateMaxDetails;
 
     @Autowired
-    public ProductCompositeServiceImpl(ServiceUtil serviceUtil, ProductCompositeIntegration integration) {
+    public ProductCompositeServiceImpl(
+            ServiceUtil serviceUtil,
+            ProductCompositeIntegration integration,
+            ProductAggregateCache cache,
+            ReactiveInstrumentation instrumentation,
+            @Value("${app.max-batch-size:200}") int maxBatchSize,
+            @Value("${app.event-batch-size:500}") int eventBatchSize,
+            @Value("${app.aggregate-max-details:100}") int aggregateMaxDetails) {
         this.serviceUtil = serviceUtil;
         this.integration = integration;
+        this.cache = cache;
+        this.instrumentation = instrumentation;
+        this.maxBatchSize = maxBatchSize;
+        this.eventBatchSize = eventBatchSize;
+        this.aggregateMaxDetails = aggregateMaxDetails;
     }
 
 
     @Override
     public Mono<ProductAggregate> getCompositeProduct(int productId) {
+        ProductAggregate cachedAggregate = cache.get(productId);
+        if (cachedAggregate != null) {
+            log.debug("getCompositeProduct: found a cached aggregate for productId: {}", productId);
+            return Mono.just(cachedAggregate);
+        }
+
+        long cacheGeneration = cache.generation(productId);
+        AtomicBoolean degraded = new AtomicBoolean();
         return Mono.zip(values ->
-                                createProductAggregate((Product) values[0], (List<Recommendation>) values[1],
+                                createBoundedProductAggregate((Product) values[0], (List<Recommendation>) values[1],
                                         (List<Review>) values[2], serviceUtil.getServiceAddress()),
                         integration.getProduct(productId),
-                        integration.getRecommendation(productId).collectList(),
-                        integration.getReviews(productId).collectList())
+                        orEmpty(firstRecommendations(productId), FIELD_RECOMMENDATIONS, degraded).collectList(),
+                        orEmpty(firstReviews(productId), FIELD_REVIEWS, degraded).collectList())
+                .doOnNext(aggregate -> {
+                    if (!degraded.get()) {
+                        cache.put(productId, aggregate, cacheGeneration);
+                    }
+                })
+                .doOnError(ex -> log.warn("getCompositeProduct failed: {}", ex.toString()))
+                .transform(instrumentation.mono("composite.get"));
+    }
+
+    @Override
+    public Mono<SparseProductAggregate> getCompositeProduct(int productId, List<String> fields) {
+        Set<String> selectedFields = parseFields(fields);
+        if (selectedFields.containsAll(ALL_FIELDS)) {
+            return getCompositeProduct(productId).map(aggregate -> selectFields(aggregate, selectedFields));
+        }
+
+        ProductAggregate cachedAggregate = cache.get(productId);
+        if (cachedAggregate != null) {
+            log.debug("getCompositeProduct: found a cached aggregate for productId: {}, selects fields: {}", productId, selectedFields);
+            return Mono.just(selectFields(cachedAggregate, selectedFields));
+        }
+
+        log.debug("getCompositeProduct: will only fetch fields: {} for productId: {}", selectedFields, productId);
+
+        // Recommendations and reviews that are not requested are never fetched, partial aggregates are not cached.
+        // The product is always read, it is a cheap lookup that gives a 404 for a product that does not exist
+        Mono<Product> product = integration.getProduct(productId);
+        Mono<List<Recommendation>> recommendations = selectedFields.contains(FIELD_RECOMMENDATIONS) ?
+                orEmpty(firstRecommendations(productId), FIELD_RECOMMENDATIONS).collectList() : Mono.just(List.of());
+        Mono<List<Review>> reviews = selectedFields.contains(FIELD_REVIEWS) ?
+                orEmpty(firstReviews(productId), FIELD_REVIEWS).collectList() : Mono.just(List.of());
+
+        return Mono.zip(values ->
+                                createBoundedProductAggregate((Product) values[0], (List<Recommendation>) values[1],
+                                        (List<Review>) values[2], serviceUtil.getServiceAddress()),
+                        product, recommendations, reviews)
+                .map(aggregate -> selectFields(aggregate, selectedFields))
                 .doOnError(ex -> log.warn("getCompositeProduct failed: {}", ex.toString()))
-                .log();
+                .transform(instrumentation.mono("composite.get-fields"));
+    }
+
+    @Override
+    public Flux<ProductAggregatePart> getCompositeProductStream(int productId) {
+        ProductAggregate cachedAggregate = cache.get(productId);
+        if (cachedAggregate != null) {
+            log.debug("getCompositeProductStream: found a cached aggregate for productId: {}", productId);
+            return Flux.fromIterable(createProductAggregateParts(cachedAggregate));
+        }
+
+        Flux<ProductAggregatePart> productPart = integration.getProduct(productId)
+                .map(p -> ProductAggregatePart.product(p.getProductId(), p.getName(), p.getWeight()))
+                .flux();
+
+        // The same first page of details as the aggregate, a client that gets aggregateMaxDetails parts of a kind
+        // reads the rest from the page endpoints
+        Flux<ProductAggregatePart> detailParts = Flux.merge(
+                orEmpty(firstRecommendations(productId), FIELD_RECOMMENDATIONS)
+                        .map(r -> ProductAggregatePart.recommendation(productId, new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent()))),
+                orEmpty(firstReviews(productId), FIELD_REVIEWS)
+                        .map(r -> ProductAggregatePart.review(productId, new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))));
+
+        // Subscribes to all three calls at once, but holds back details until the product part has been emitted
+        return Flux.mergeSequential(productPart, detailParts)
+                .doOnError(ex -> log.warn("getCompositeProductStream failed: {}", ex.toString()))
+                .transform(instrumentation.flux("composite.get-stream"));
+    }
+
+    @Override
+    public Flux<RecommendationSummary> getCompositeProductRecommendations(int productId, int afterRecommendationId, int pageSize) {
+        return integration.getRecommendationsPage(productId, afterRecommendationId, pageSize)
+                .map(r -> new RecommendationSummary(r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent()))
+                .doOnError(ex -> log.warn("getCompositeProductRecommendations failed: {}", ex.toString()))
+                .transform(instrumentation.flux("composite.get-recommendations-page"));
+    }
+
+    @Override
+    public Flux<ReviewSummary> getCompositeProductReviews(int productId, int afterReviewId, int pageSize) {
+        return integration.getReviewsPage(productId, afterReviewId, pageSize)
+                .map(r -> new ReviewSummary(r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent()))
+                .doOnError(ex -> log.warn("getCompositeProductReviews failed: {}", ex.toString()))
+                .transform(instrumentation.flux("composite.get-reviews-page"));
+    }
+
+    @Override
+    public Flux<ProductAggregate> getCompositeProducts(List<Integer> productIds) {
+        if (productIds.isEmpty() || productIds.size() > maxBatchSize) {
+            throw new InvalidInputException("Invalid number of productIds: " + productIds.size() + ", expected 1 to " + maxBatchSize);
+        }
+
+        List<Integer> requestedIds = productIds.stream().distinct().toList();
+        Map<Integer, ProductAggregate> cachedAggregates = new HashMap<>();
+        List<Integer> missingIds = new ArrayList<>();
+        requestedIds.forEach(productId -> {
+            ProductAggregate cachedAggregate = cache.get(productId);
+            if (cachedAggregate != null) {
+                cachedAggregates.put(productId, cachedAggregate);
+            } else {
+                missingIds.add(productId);
+            }
+        });
+
+        log.debug("getCompositeProducts: {} aggregates found in cache, will fetch {}", cachedAggregates.size(), missingIds.size());
+
+        Map<Integer, Long> cacheGenerations = missingIds.stream().collect(Collectors.toMap(id -> id, cache::generation));
+        AtomicBoolean degraded = new AtomicBoolean();
+        Mono<Map<Integer, ProductAggregate>> fetchedAggregates = missingIds.isEmpty() ? Mono.just(Map.of()) :
+                Mono.zip(values ->
+                                createProductAggregates((List<Product>) values[0], (Map<Integer, Collection<Recommendation>>) values[1],
+                                        (Map<Integer, Collection<Review>>) values[2], serviceUtil.getServiceAddress()),
+                        integration.getProducts(missingIds).collectList(),
+                        orEmpty(integration.getRecommendations(missingIds), FIELD_RECOMMENDATIONS, degraded).collectMultimap(Recommendation::getProductId),
+                        orEmpty(integration.getReviews(missingIds), FIELD_REVIEWS, degraded).collectMultimap(Review::getProductId))
+                        .doOnNext(fetched -> {
+                            if (!degraded.get()) {
+                                fetched.forEach((productId, aggregate) -> cache.put(productId, aggregate, cacheGenerations.get(productId)));
+                            }
+                        });
+
+        return fetchedAggregates
+                .flatMapMany(fetched -> Flux.fromIterable(requestedIds)
+                        .mapNotNull(productId -> cachedAggregates.getOrDefault(productId, fetched.get(productId))))
+                .doOnError(ex -> log.warn("getCompositeProducts failed: {}", ex.toString()))
+                .transform(instrumentation.flux("composite.get-batch"));
     }
 
     @Override
     public Mono<Void> createCompositeProduct(ProductAggregate body) {
         try {
-            List<Mono> monoList = new ArrayList<>();
+            List<Mono<?>> monoList = new ArrayList<>();
 
             log.debug("createCompositeProduct: creates a new composite entity for productId: {}", body.getProductId());
+            cache.invalidate(body.getProductId());
 
             Product product = new Product(body.getProductId(), body.getName(), body.getWeight(), null);
 
             monoList.add(integration.createProduct(product));
 
-            if (body.getRecommendations() != null) {
-                body.getRecommendations().forEach(r -> {
-                    Recommendation recommendation = new Recommendation(body.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null);
-                    monoList.add(integration.createRecommendation(recommendation));
-                });
+            if (body.getRecommendations() != null && !body.getRecommendations().isEmpty()) {
+                List<Recommendation> recommendations = body.getRecommendations().stream()
+                        .map(r -> new Recommendation(body.getProductId(), r.getRecommendationId(), r.getAuthor(), r.getRate(), r.getContent(), null))
+                        .toList();
+                partition(recommendations).forEach(batch -> monoList.add(integration.createRecommendations(batch).collectList()));
             }
 
-            if (body.getReviews() != null) {
-                body.getReviews().forEach(r -> {
-                    Review review = new Review(body.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null);
-                    monoList.add(integration.createReview(review));
-                });
+            if (body.getReviews() != null && !body.getReviews().isEmpty()) {
+                List<Review> reviews = body.getReviews().stream()
+                        .map(r -> new Review(body.getProductId(), r.getReviewId(), r.getAuthor(), r.getSubject(), r.getContent(), null))
+                        .toList();
+                partition(reviews).forEach(batch -> monoList.add(integration.createReviews(batch).collectList()));
             }
             log.debug("createCompositeProduct: composite entites created for productId: {}", body.getProductId());
 
-            return Mono.zip(r -> "", monoList.toArray(new Mono[0]))
-                    .doOnError(ex -> log.warn("createCompositeProduct failed: {}", ex.toString()))
-                    .then();
+            // Not Mono.zip, that cancels the other sends as soon as one of them completes without a value
+            return Mono.whenDelayError(monoList)
+                    .doOnError(ex -> log.warn("createCompositeProduct failed: {}", ex.toString()));
         } catch (RuntimeException e) {
             throw e;
         }
@@ -79,14 +240,15 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
     public Mono<Void> deleteCompositeProduct(int productId) {
         try {
             log.debug("deleteCompositeProduct: Deletes a product aggregate for productI: {}", productId);
+            cache.invalidate(productId);
 
-            return Mono.zip(
-                r -> "",
+            // Each delete is a Mono<Void>, Mono.zip would cancel the other two as soon as the first one completes
+            return Mono.whenDelayError(
                 integration.deleteProduct(productId),
                 integration.deleteRecommendation(productId),
                 integration.deleteReviews(productId))
                     .doOnError(ex -> log.warn("delete failed: {}", ex.toString()))
-                    .log(log.getName(), Level.FINE).then();
+                    .transform(instrumentation.mono("composite.delete"));
 
 
         } catch (RuntimeException e) {
@@ -95,7 +257,102 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         }
     }
 
+    // An aggregate embeds at most the first aggregateMaxDetails recommendations and reviews, read as one bounded
+    // page from the core services. The rest is paged through the /recommendations and /reviews endpoints
+    private Flux<Recommendation> firstRecommendations(int productId) {
+        return integration.getRecommendationsPage(productId, 0, aggregateMaxDetails);
+    }
+
+    private Flux<Review> firstReviews(int productId) {
+        return integration.getReviewsPage(productId, 0, aggregateMaxDetails);
+    }
+
+    // A failed recommendation or review call leaves that part of the aggregate empty instead of failing the
+    // request. Such a degraded aggregate must not be cached, so the failure is flagged to the caller. An exceeded
+    // deadline still fails the request, the client gets a 504 rather than a partial aggregate it has given up on
+    private <T> Flux<T> orEmpty(Flux<T> part, String partName, AtomicBoolean degraded) {
+        return part.onErrorResume(ex -> !(ex instanceof DeadlineExceededException), ex -> {
+            log.warn("Failed to get {}, returns the aggregate without them: {}", partName, ex.toString());
+            degraded.set(true);
+            return Flux.empty();
+        });
+    }
+
+    private <T> Flux<T> orEmpty(Flux<T> part, String partName) {
+        return orEmpty(part, partName, new AtomicBoolean());
+    }
+
+    // Keeps each batch event well below the message size limits of the brokers
+    private <T> List<List<T>> partition(List<T> items) {
+        List<List<T>> batches = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += eventBatchSize) {
+            batches.add(items.subList(from, Math.min(from + eventBatchSize, items.size())));
+        }
+        return batches;
+    }
+
+    private Map<Integer, ProductAggregate> createProductAggregates(List<Product> products, Map<Integer, Collection<Recommendation>> recommendations, Map<Integer, Collection<Review>> reviews, String serviceAddress) {
+        Map<Integer, ProductAggregate> aggregates = new HashMap<>();
+        products.forEach(product -> {
+            int productId = product.getProductId();
+            ProductAggregate aggregate = createProductAggregate(product,
+                    new ArrayList<>(recommendations.getOrDefault(productId, List.of())),
+                    new ArrayList<>(reviews.getOrDefault(productId, List.of())),
+                    serviceAddress);
+            aggregates.put(productId, aggregate);
+        });
+        return aggregates;
+    }
+
+    private Set<String> parseFields(List<String> fields) {
+        Set<String> selectedFields = fields.stream()
+                .map(field -> field.trim().toLowerCase())
+                .filter(field -> !field.isEmpty())
+                .collect(Collectors.toSet());
+
+        if (selectedFields.isEmpty() || !ALL_FIELDS.containsAll(selectedFields)) {
+            throw new InvalidInputException("Invalid fields: " + String.join(",", fields) + ", expected any of product, recommendations, reviews");
+        }
+        return selectedFields;
+    }
+
+    private SparseProductAggregate selectFields(ProductAggregate aggregate, Set<String> fields) {
+        boolean includeProduct = fields.contains(FIELD_PRODUCT);
+        return new SparseProductAggregate(aggregate.getProductId(),
+                includeProduct ? aggregate.getName() : null,
+                includeProduct ? aggregate.getWeight() : null,
+                fields.contains(FIELD_RECOMMENDATIONS) ? aggregate.getRecommendations() : null,
+                fields.contains(FIELD_REVIEWS) ? aggregate.getReviews() : null,
+                aggregate.getServiceAddresses(),
+                fields.contains(FIELD_RECOMMENDATIONS) ? aggregate.isHasMoreRecommendations() : null,
+                fields.contains(FIELD_REVIEWS) ? aggregate.isHasMoreReviews() : null);
+    }
+
+    private List<ProductAggregatePart> createProductAggregateParts(ProductAggregate aggregate) {
+        int productId = aggregate.getProductId();
+        List<ProductAggregatePart> parts = new ArrayList<>();
+        parts.add(ProductAggregatePart.product(productId, aggregate.getName(), aggregate.getWeight()));
+        if (aggregate.getRecommendations() != null) {
+            aggregate.getRecommendations().forEach(r -> parts.add(ProductAggregatePart.recommendation(productId, r)));
+        }
+        if (aggregate.getReviews() != null) {
+            aggregate.getReviews().forEach(r -> parts.add(ProductAggregatePart.review(productId, r)));
+        }
+        return parts;
+    }
+
+    // Flags a full first page, the batch read embeds every detail and never has more
+    private ProductAggregate createBoundedProductAggregate(Product product, List<Recommendation> recommendations, List<Review> reviews, String serviceAddress) {
+        return createProductAggregate(product, recommendations, reviews, serviceAddress,
+                recommendations.size() >= aggregateMaxDetails, reviews.size() >= aggregateMaxDetails);
+    }
+
     private ProductAggregate createProductAggregate(Product product, List<Recommendation> recommendation, List<Review> reviews, String serviceAddress) {
+        return createProductAggregate(product, recommendation, reviews, serviceAddress, false, false);
+    }
+
+    private ProductAggregate createProductAggregate(Product product, List<Recommendation> recommendation, List<Review> reviews, String serviceAddress,
+                                                    boolean hasMoreRecommendations, boolean hasMoreReviews) {
         int productId = product.getProductId();
         String name = product.getName();
         int weight = product.getWeight();
@@ -115,7 +372,8 @@ public class ProductCompositeServiceImpl implements ProductCompositeService {
         String recommendationAddress = (recommendation != null && recommendation.size() > 0) ? recommendation.get(0).getServiceAddress() : "";
         ServiceAddresses serviceAddresses = new ServiceAddresses(serviceAddress, productAddress, reviewAddress, recommendationAddress);
 
-        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses);
+        return new ProductAggregate(productId, name, weight, recommendationSummaries, reviewSummaries, serviceAddresses,
+                hasMoreRecommendations, hasMoreReviews);
 
     }
 }
@@ -0,0 +1,33 @@
+package se.magnus.microservices.composite.product.services;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.annotation.BridgeTo;
+import org.springframework.integration.channel.PublishSubscribeChannel;
+
+// With errorChannelEnabled the binder sends a failed send to the <destination>.errors channel of the output binding,
+// and only from there on to the global errorChannel. Declaring these channels lets only the failures of the event
+// destinations reach EventPublisher, not those of every consumer and binding in the service
+@Configuration
+@ConditionalOnProperty(name = "app.publisher-confirms.mode", havingValue = "kafka")
+public class PublishFailureChannelsConfig {
+
+    @Bean(name = "products.errors")
+    @BridgeTo(EventPublisher.SEND_FAILURES_CHANNEL)
+    public PublishSubscribeChannel productsErrors() {
+        return new PublishSubscribeChannel();
+    }
+
+    @Bean(name = "recommendations.errors")
+    @BridgeTo(EventPublisher.SEND_FAILURES_CHANNEL)
+    public PublishSubscribeChannel recommendationsErrors() {
+        return new PublishSubscribeChannel();
+    }
+
+    @Bean(name = "reviews.errors")
+    @BridgeTo(EventPublisher.SEND_FAILURES_CHANNEL)
+    public PublishSubscribeChannel reviewsErrors() {
+        return new PublishSubscribeChannel();
+    }
+}
@@ -0,0 +1,83 @@
+package se.magnus.microservices.composite.product.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+import se.magnus.util.exceptions.DeadlineExceededException;
+import se.magnus.util.http.RequestDeadline;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Callers only join a call in flight for the same key and the same generation of it. A caller that caches what it
+// reads, and took the generation of the key before, must not join a call that started before an invalidation
+public class RequestCoalescer<K, T> {
+    private final ConcurrentMap<InFlightKey<K>, Flux<T>> inFlight = new ConcurrentHashMap<>();
+    private final boolean enabled;
+    private final Function<K, Long> generation;
+    private final Counter collapsedCounter;
+
+    private record InFlightKey<K>(K key, long generation) {
+    }
+
+    public RequestCoalescer(String callName, MeterRegistry meterRegistry, boolean enabled) {
+        this(callName, meterRegistry, enabled, key -> 0L);
+    }
+
+    public RequestCoalescer(String callName, MeterRegistry meterRegistry, boolean enabled, Function<K, Long> generation) {
+        this.enabled = enabled;
+        this.generation = generation;
+        this.collapsedCounter = Counter.builder("composite.requests.collapsed")
+                .description("Number of downstream calls that joined an in-flight call for the same key")
+                .tag("call", callName)
+                .register(meterRegistry);
+        Gauge.builder("composite.requests.in-flight", inFlight, ConcurrentMap::size)
+                .description("Number of distinct keys with a downstream call in flight")
+                .tag("call", callName)
+                .register(meterRegistry);
+    }
+
+    public Mono<T> mono(K key, Supplier<Mono<T>> call) {
+        return flux(key, () -> call.get().flux()).singleOrEmpty();
+    }
+
+    public Flux<T> flux(K key, Supplier<Flux<T>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+
+        return Flux.deferContextual(context -> {
+            AtomicBoolean created = new AtomicBoolean(false);
+            Flux<T> shared = inFlight.computeIfAbsent(new InFlightKey<>(key, generation.apply(key)), k -> {
+                created.set(true);
+                return call.get()
+                        .doFinally(signal -> inFlight.remove(k))
+                        .cache();
+            });
+
+            if (created.get()) {
+                return shared;
+            }
+            collapsedCounter.increment();
+
+            // The shared call runs with the Reactor Context, and so the deadline, of the caller that started it. A
+            // joiner with time left makes its own call if that deadline fails the shared call before any item arrived
+            AtomicBoolean received = new AtomicBoolean(false);
+            return shared
+                    .doOnNext(item -> received.set(true))
+                    .onErrorResume(DeadlineExceededException.class, error -> received.get() || isExpired(context) ? Flux.error(error) : call.get());
+        });
+    }
+
+    private static boolean isExpired(ContextView context) {
+        return RequestDeadline.remaining(context)
+                .map(remaining -> remaining.isNegative() || remaining.isZero())
+                .orElse(false);
+    }
+}
@@ -0,0 +1,85 @@
+package se.magnus.microservices.composite.product;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import se.magnus.microservices.composite.product.services.DeadlinePropagationFilterFunction;
+import se.magnus.util.exceptions.DeadlineExceededException;
+import se.magnus.util.http.RequestDeadline;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.http.HttpStatus.OK;
+
+class DeadlinePropagationFilterFunctionTests {
+    private final DeadlinePropagationFilterFunction filter = new DeadlinePropagationFilterFunction();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicReference<ClientRequest> sentRequest = new AtomicReference<>();
+
+    @Test
+    void remainingTimeIsPropagated() {
+        Instant deadline = Instant.now().plusSeconds(10);
+
+        StepVerifier.create(filter.filter(request(), respondAfter(Duration.ZERO))
+                        .contextWrite(context -> RequestDeadline.putInContext(context, deadline)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        long propagatedMillis = Long.parseLong(sentRequest.get().headers().getFirst(RequestDeadline.HEADER));
+        assertTrue(propagatedMillis > 9_000 && propagatedMillis <= 10_000, "Propagated " + propagatedMillis + " ms");
+    }
+
+    @Test
+    void noHeaderWithoutDeadline() {
+        StepVerifier.create(filter.filter(request(), respondAfter(Duration.ZERO)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        assertNull(sentRequest.get().headers().getFirst(RequestDeadline.HEADER));
+    }
+
+    @Test
+    void expiredDeadlineIsNotCalled() {
+        Instant deadline = Instant.now().minusMillis(1);
+
+        StepVerifier.create(filter.filter(request(), respondAfter(Duration.ZERO))
+                        .contextWrite(context -> RequestDeadline.putInContext(context, deadline)))
+                .expectError(DeadlineExceededException.class)
+                .verify();
+
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    void slowCallFailsAtTheDeadline() {
+        Instant deadline = Instant.now().plusMillis(100);
+
+        StepVerifier.create(filter.filter(request(), respondAfter(Duration.ofSeconds(5)))
+                        .contextWrite(context -> RequestDeadline.putInContext(context, deadline)))
+                .expectError(DeadlineExceededException.class)
+                .verify(Duration.ofSeconds(1));
+    }
+
+    private ExchangeFunction respondAfter(Duration delay) {
+        return request -> {
+            calls.incrementAndGet();
+            sentRequest.set(request);
+            return Mono.delay(delay).map(tick -> ClientResponse.create(OK).build());
+        };
+    }
+
+    private ClientRequest request() {
+        return ClientRequest.create(HttpMethod.GET, URI.create("http://review/review?productId=1")).build();
+    }
+}
@@ -0,0 +1,38 @@
+package se.magnus.microservices.composite.product;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import se.magnus.microservices.composite.product.services.DownstreamConnectionPools;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DownstreamConnectionPoolsTests {
+    private DownstreamConnectionPools connectionPools;
+
+    @AfterEach
+    void tearDown() {
+        connectionPools.destroy();
+    }
+
+    @Test
+    void everyServiceGetsItsOwnPool() {
+        connectionPools = new DownstreamConnectionPools(new MockEnvironment());
+
+        assertSame(connectionPools.connectionProvider("product"), connectionPools.connectionProvider("product"));
+        assertNotSame(connectionPools.connectionProvider("product"), connectionPools.connectionProvider("review"));
+    }
+
+    @Test
+    void serviceSettingsOverrideSharedSettings() {
+        MockEnvironment environment = new MockEnvironment()
+                .withProperty("app.downstream.pool.max-connections", "30")
+                .withProperty("app.downstream.review.max-connections", "5");
+        connectionPools = new DownstreamConnectionPools(environment);
+
+        assertEquals(30, connectionPools.connectionProvider("product").maxConnections());
+        assertEquals(5, connectionPools.connectionProvider("review").maxConnections());
+    }
+}
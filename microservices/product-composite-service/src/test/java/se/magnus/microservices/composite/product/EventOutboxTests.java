@@ -0,0 +1,148 @@
+package se.magnus.microservices.composite.product;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.composite.product.services.EventOutbox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static se.magnus.api.event.Event.Type.CREATE;
+import static se.magnus.api.event.Event.Type.DELETE;
+
+class EventOutboxTests {
+    private static final long COMPACT_THRESHOLD = 1024 * 1024;
+    private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsEventsInAppendOrder() throws IOException {
+        try (EventOutbox outbox = new EventOutbox(mapper, directory, false, COMPACT_THRESHOLD)) {
+            outbox.append("products-out-0", new Event<>(CREATE, 1, new Product(1, "name", 1, null)));
+            outbox.append("reviews-out-0", new Event<>(DELETE, 1, null));
+
+            List<EventOutbox.Entry> batch = outbox.readBatch(10);
+
+            assertEquals(2, batch.size());
+            assertEquals("products-out-0", batch.get(0).bindingName());
+            assertEquals(CREATE, batch.get(0).event().getEventType());
+            assertEquals("name", ((Map<?, ?>) batch.get(0).event().getData()).get("name"));
+            assertEquals("reviews-out-0", batch.get(1).bindingName());
+            assertEquals(DELETE, batch.get(1).event().getEventType());
+        }
+    }
+
+    @Test
+    void resumesFromTheRelayPositionAfterRestart() throws IOException {
+        try (EventOutbox outbox = new EventOutbox(mapper, directory, true, COMPACT_THRESHOLD)) {
+            outbox.append("products-out-0", new Event<>(DELETE, 1, null));
+            outbox.append("products-out-0", new Event<>(DELETE, 2, null));
+            outbox.append("products-out-0", new Event<>(DELETE, 3, null));
+
+            List<EventOutbox.Entry> batch = outbox.readBatch(2);
+            assertEquals(2, batch.size());
+            outbox.markRelayed(batch.get(1).endOffset());
+        }
+
+        try (EventOutbox outbox = new EventOutbox(mapper, directory, true, COMPACT_THRESHOLD)) {
+            List<EventOutbox.Entry> batch = outbox.readBatch(10);
+
+            assertEquals(1, batch.size());
+            assertEquals(3, batch.get(0).event().getKey());
+        }
+    }
+
+    @Test
+    void truncatesTheLogWhenEverythingIsRelayed() throws IOException {
+        try (EventOutbox outbox = new EventOutbox(mapper, directory, false, COMPACT_THRESHOLD)) {
+            outbox.append("products-out-0", new Event<>(DELETE, 1, null));
+            List<EventOutbox.Entry> batch = outbox.readBatch(10);
+
+            outbox.markRelayed(batch.get(0).endOffset());
+
+            assertEquals(0, outbox.pendingBytes());
+            assertEquals(0, Files.size(directory.resolve("outbox.log")));
+            assertEquals(0, outbox.readBatch(10).size());
+        }
+    }
+
+    @Test
+    void skipsALineThatIsNotCompletelyWritten() throws IOException {
+        try (EventOutbox outbox = new EventOutbox(mapper, directory, false, COMPACT_THRESHOLD)) {
+            outbox.append("products-out-0", new Event<>(DELETE, 1, null));
+            Files.writeString(directory.resolve("outbox.log"), "{\"bindingName\":\"products-out-0\"", StandardOpenOption.APPEND);
+
+            assertEquals(1, outbox.readBatch(10).size());
+        }
+    }
+
+    @Test
+    void returnsACorruptLineWithoutStoppingTheBatch() throws IOException {
+        try (EventOutbox outbox = new EventOutbox(mapper, directory, false, COMPACT_THRESHOLD)) {
+            Files.writeString(directory.resolve("outbox.log"), "not json\n", StandardOpenOption.APPEND);
+            outbox.append("products-out-0", new Event<>(DELETE, 1, null));
+
+            List<EventOutbox.Entry> batch = outbox.readBatch(10);
+
+            assertEquals(2, batch.size());
+            assertTrue(batch.get(0).isCorrupt());
+            assertFalse(batch.get(1).isCorrupt());
+
+            outbox.quarantine(batch.get(0));
+            assertEquals("not json\n", Files.readString(directory.resolve("outbox.corrupt")));
+        }
+    }
+
+    @Test
+    void endsALineTornByACrashBeforeTheNextAppend() throws IOException {
+        try (EventOutbox outbox = new EventOutbox(mapper, directory, false, COMPACT_THRESHOLD)) {
+            outbox.append("products-out-0", new Event<>(DELETE, 1, null));
+            Files.writeString(directory.resolve("outbox.log"), "{\"bindingName\":\"products-out-0\"", StandardOpenOption.APPEND);
+        }
+
+        try (EventOutbox outbox = new EventOutbox(mapper, directory, false, COMPACT_THRESHOLD)) {
+            outbox.append("products-out-0", new Event<>(DELETE, 2, null));
+
+            List<EventOutbox.Entry> batch = outbox.readBatch(10);
+
+            assertEquals(3, batch.size());
+            assertTrue(batch.get(1).isCorrupt());
+            assertEquals(2, batch.get(2).event().getKey());
+        }
+    }
+
+    @Test
+    void compactsTheLogWhenItNeverCatchesUp() throws IOException {
+        try (EventOutbox outbox = new EventOutbox(mapper, directory, false, 1)) {
+            outbox.append("products-out-0", new Event<>(DELETE, 1, null));
+            outbox.append("products-out-0", new Event<>(DELETE, 2, null));
+            long pendingBytes = outbox.pendingBytes();
+
+            List<EventOutbox.Entry> batch = outbox.readBatch(1);
+            outbox.markRelayed(batch.get(0).endOffset());
+
+            assertEquals(pendingBytes - batch.get(0).endOffset(), Files.size(directory.resolve("outbox.log")));
+            outbox.append("products-out-0", new Event<>(DELETE, 3, null));
+            List<EventOutbox.Entry> rest = outbox.readBatch(10);
+            assertEquals(2, rest.size());
+            assertEquals(2, rest.get(0).event().getKey());
+            assertEquals(3, rest.get(1).event().getKey());
+        }
+
+        try (EventOutbox outbox = new EventOutbox(mapper, directory, false, 1)) {
+            assertEquals(2, outbox.readBatch(10).size());
+        }
+    }
+}
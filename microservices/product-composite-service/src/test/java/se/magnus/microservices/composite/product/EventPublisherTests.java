@@ -0,0 +1,95 @@
+package se.magnus.microservices.composite.product;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.ErrorMessage;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.composite.product.services.EventPublisher;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static se.magnus.api.event.Event.Type.DELETE;
+
+class EventPublisherTests {
+    private final StreamBridge streamBridge = mock(StreamBridge.class);
+    private final ArgumentCaptor<Message<?>> sent = ArgumentCaptor.forClass(Message.class);
+
+    @Test
+    void completesWhenTheBinderAcceptsTheMessage() {
+        when(streamBridge.send(eq("products-out-0"), any())).thenReturn(true);
+        EventPublisher publisher = new EventPublisher(streamBridge, "none", Duration.ofSeconds(1));
+
+        StepVerifier.create(publisher.publish("products-out-0", new Event<>(DELETE, 1, null))).verifyComplete();
+    }
+
+    @Test
+    void failsWhenTheBinderRejectsTheMessage() {
+        when(streamBridge.send(eq("products-out-0"), any())).thenReturn(false);
+        EventPublisher publisher = new EventPublisher(streamBridge, "none", Duration.ofSeconds(1));
+
+        StepVerifier.create(publisher.publish("products-out-0", new Event<>(DELETE, 1, null)))
+                .verifyError(MessageDeliveryException.class);
+    }
+
+    @Test
+    void waitsForTheRabbitConfirm() {
+        when(streamBridge.send(eq("products-out-0"), sent.capture())).thenReturn(true);
+        EventPublisher publisher = new EventPublisher(streamBridge, "rabbit", Duration.ofSeconds(1));
+
+        Mono<Void> acked = publisher.publish("products-out-0", new Event<>(DELETE, 1, null)).cache();
+        acked.subscribe();
+        correlationOf(sent.getValue()).getFuture().complete(new CorrelationData.Confirm(true, null));
+        StepVerifier.create(acked).verifyComplete();
+
+        Mono<Void> nacked = publisher.publish("products-out-0", new Event<>(DELETE, 2, null)).cache();
+        nacked.subscribe(result -> {}, error -> {});
+        correlationOf(sent.getValue()).getFuture().complete(new CorrelationData.Confirm(false, "queue full"));
+        StepVerifier.create(nacked).verifyError(MessageDeliveryException.class);
+    }
+
+    @Test
+    void correlatesKafkaSendResults() {
+        when(streamBridge.send(eq("products-out-0"), sent.capture())).thenReturn(true);
+        EventPublisher publisher = new EventPublisher(streamBridge, "kafka", Duration.ofSeconds(1));
+
+        Mono<Void> confirmed = publisher.publish("products-out-0", new Event<>(DELETE, 1, null)).cache();
+        confirmed.subscribe();
+        publisher.onSendResult(sent.getValue());
+        StepVerifier.create(confirmed).verifyComplete();
+
+        Mono<Void> failed = publisher.publish("products-out-0", new Event<>(DELETE, 2, null)).cache();
+        failed.subscribe(result -> {}, error -> {});
+        publisher.onSendFailure(new ErrorMessage(new MessagingException(sent.getValue(), "broker down")));
+        StepVerifier.create(failed).verifyError(MessagingException.class);
+        verify(streamBridge, times(2)).send(eq("products-out-0"), any());
+    }
+
+    @Test
+    void timesOutWithoutAConfirm() {
+        when(streamBridge.send(eq("products-out-0"), any())).thenReturn(true);
+        EventPublisher publisher = new EventPublisher(streamBridge, "kafka", Duration.ofMillis(50));
+
+        StepVerifier.create(publisher.publish("products-out-0", new Event<>(DELETE, 1, null)))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(1));
+    }
+
+    private CorrelationData correlationOf(Message<?> message) {
+        return (CorrelationData) message.getHeaders().get(AmqpHeaders.PUBLISH_CONFIRM_CORRELATION);
+    }
+}
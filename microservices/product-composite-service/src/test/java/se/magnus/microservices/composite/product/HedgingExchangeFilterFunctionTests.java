@@ -0,0 +1,117 @@
+package se.magnus.microservices.composite.product;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import se.magnus.microservices.composite.product.services.HedgingExchangeFilterFunction;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.http.HttpStatus.OK;
+
+class HedgingExchangeFilterFunctionTests {
+    private static final Duration SLOW = Duration.ofSeconds(2);
+    private static final Duration FAST = Duration.ofMillis(10);
+
+    private final AtomicInteger attempts = new AtomicInteger();
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        attempts.set(0);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void slowCallIsHedged() {
+        HedgingExchangeFilterFunction filter = createFilter(true, 10);
+
+        ClientResponse response = filter.filter(request(HttpMethod.GET), firstAttemptSlow()).block(Duration.ofSeconds(1));
+
+        assertEquals("2", response.headers().asHttpHeaders().getFirst("attempt"));
+        assertEquals(2, attempts.get());
+        assertEquals(1, meterRegistry.get("composite.hedging.sent").counter().count());
+        assertEquals(1, meterRegistry.get("composite.hedging.won").counter().count());
+    }
+
+    @Test
+    void cancelledAttemptIsRecorded() {
+        HedgingExchangeFilterFunction filter = createFilter(true, 10);
+
+        filter.filter(request(HttpMethod.GET), firstAttemptSlow()).block(Duration.ofSeconds(1));
+
+        Timer latency = meterRegistry.get("composite.downstream.latency").tag("service", "product").timer();
+        assertEquals(2, latency.count());
+        // The slow first attempt is cancelled once the hedge has won, after the 50 ms hedge delay
+        assertTrue(latency.max(TimeUnit.MILLISECONDS) >= 50);
+    }
+
+    @Test
+    void fastCallIsNotHedged() {
+        HedgingExchangeFilterFunction filter = createFilter(true, 10);
+
+        ClientResponse response = filter.filter(request(HttpMethod.GET), request -> respond(attempts.incrementAndGet(), FAST)).block();
+
+        assertEquals("1", response.headers().asHttpHeaders().getFirst("attempt"));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void hedgesAreCapped() {
+        HedgingExchangeFilterFunction filter = createFilter(true, 0);
+
+        ClientResponse response = filter.filter(request(HttpMethod.GET), firstAttemptSlow()).block();
+
+        assertEquals("1", response.headers().asHttpHeaders().getFirst("attempt"));
+        assertEquals(1, attempts.get());
+        assertEquals(1, meterRegistry.get("composite.hedging.rejected").counter().count());
+    }
+
+    @Test
+    void onlyGetRequestsAreHedged() {
+        HedgingExchangeFilterFunction filter = createFilter(true, 10);
+
+        filter.filter(request(HttpMethod.POST), firstAttemptSlow()).block();
+
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void hedgingCanBeDisabled() {
+        HedgingExchangeFilterFunction filter = createFilter(false, 10);
+
+        filter.filter(request(HttpMethod.GET), firstAttemptSlow()).block();
+
+        assertEquals(1, attempts.get());
+    }
+
+    private HedgingExchangeFilterFunction createFilter(boolean enabled, int maxHedgesInFlight) {
+        return new HedgingExchangeFilterFunction(meterRegistry, enabled, 0.95, Duration.ofMillis(50), Duration.ofMillis(50), maxHedgesInFlight);
+    }
+
+    private ExchangeFunction firstAttemptSlow() {
+        return request -> {
+            int attempt = attempts.incrementAndGet();
+            return respond(attempt, attempt == 1 ? SLOW : FAST);
+        };
+    }
+
+    private Mono<ClientResponse> respond(int attempt, Duration delay) {
+        return Mono.delay(delay).map(tick -> ClientResponse.create(OK).header("attempt", String.valueOf(attempt)).build());
+    }
+
+    private ClientRequest request(HttpMethod method) {
+        return ClientRequest.create(method, URI.create("http://product/product/1")).build();
+    }
+}
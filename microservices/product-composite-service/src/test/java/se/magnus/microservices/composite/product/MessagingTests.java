@@ -23,6 +23,7 @@ import se.magnus.api.event.Event;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static java.util.Collections.singletonList;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -31,6 +32,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.ACCEPTED;
 import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
 import static se.magnus.api.event.Event.Type.CREATE;
 import static se.magnus.api.event.Event.Type.DELETE;
@@ -89,15 +91,47 @@ public class MessagingTests {
 
         assertEquals(1, recommendationMessages.size());
         RecommendationSummary rec = composite.getRecommendations().get(0);
-        Event<Integer, Recommendation> expectedRecommendationEvent = new Event(CREATE, composite.getProductId(), new Recommendation(composite.getProductId(), rec.getRecommendationId(), rec.getAuthor(), rec.getRate(), rec.getContent(), null));
+        Event<Integer, Recommendation> expectedRecommendationEvent = Event.createBatch(composite.getProductId(),
+                singletonList(new Recommendation(composite.getProductId(), rec.getRecommendationId(), rec.getAuthor(), rec.getRate(), rec.getContent(), null)));
         assertThat(recommendationMessages.get(0), is(sameEventExceptCreatedAt(expectedRecommendationEvent)));
 
         assertEquals(1, reviewMessages.size());
         ReviewSummary rev = composite.getReviews().get(0);
-        Event<Integer, Review> expectedReviewEvent = new Event(CREATE, composite.getProductId(), new Review(composite.getProductId(), rev.getReviewId(), rev.getAuthor(), rev.getSubject(), rev.getContent(), null));
+        Event<Integer, Review> expectedReviewEvent = Event.createBatch(composite.getProductId(),
+                singletonList(new Review(composite.getProductId(), rev.getReviewId(), rev.getAuthor(), rev.getSubject(), rev.getContent(), null)));
         assertThat(reviewMessages.get(0), is(sameEventExceptCreatedAt(expectedReviewEvent)));
     }
 
+    @Test
+    void createCompositeProductWithNullWeight() {
+        client.post()
+                .uri("/product-composite")
+                .contentType(APPLICATION_JSON)
+                .bodyValue("{\"productId\":1,\"name\":\"name\",\"weight\":null}")
+                .exchange()
+                .expectStatus().isEqualTo(ACCEPTED);
+
+        List<String> productMessages = getMessages("products");
+
+        assertEquals(1, productMessages.size());
+        Event<Integer, Product> expectedEvent = new Event(CREATE, 1, new Product(1, "name", 0, null));
+        assertThat(productMessages.get(0), is(sameEventExceptCreatedAt(expectedEvent)));
+    }
+
+    @Test
+    void createCompositeProductWithManyReviews() {
+        List<ReviewSummary> reviews = IntStream.rangeClosed(1, 1200)
+                .mapToObj(reviewId -> new ReviewSummary(reviewId, "a", "s", "c"))
+                .toList();
+        ProductAggregate composite = new ProductAggregate(1, "name", 1, null, reviews, null);
+
+        postAndVerifyProduct(composite, ACCEPTED);
+
+        // One batch event per 500 reviews instead of one event per review
+        List<String> reviewMessages = getMessages("reviews");
+        assertEquals(3, reviewMessages.size());
+    }
+
     @Test
     void deleteCompositeProduct() {
         deleteAndVerifyProduct(1, OK);
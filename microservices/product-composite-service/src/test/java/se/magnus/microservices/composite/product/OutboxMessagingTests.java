@@ -0,0 +1,79 @@
+package se.magnus.microservices.composite.product;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import se.magnus.api.event.Event;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
+import static se.magnus.api.event.Event.Type.DELETE;
+import static se.magnus.microservices.composite.product.IsSameEvent.sameEventExceptCreatedAt;
+
+// The same requests as MessagingTests, but the events go through the outbox, where sending a message completes
+// without waiting for the broker
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+        "spring.main.allow-bean-definition-overriding=true",
+        "eureka.client.enabled=false",
+        "app.outbox.enabled=true",
+        "app.outbox.poll-interval=10ms"})
+@Import({TestChannelBinderConfiguration.class})
+class OutboxMessagingTests {
+    private static final long RECEIVE_TIMEOUT_MS = 5000;
+
+    @Autowired
+    private WebTestClient client;
+
+    @Autowired
+    private OutputDestination target;
+
+    @DynamicPropertySource
+    static void outboxDirectory(DynamicPropertyRegistry registry) throws IOException {
+        String directory = Files.createTempDirectory("outbox-messaging-tests").toString();
+        registry.add("app.outbox.directory", () -> directory);
+    }
+
+    @BeforeEach
+    void setUp() {
+        purgeMessages("products");
+        purgeMessages("recommendations");
+        purgeMessages("reviews");
+    }
+
+    @Test
+    void deleteCompositeProductAppendsAllEvents() {
+        client.delete()
+                .uri("/product-composite/1")
+                .exchange()
+                .expectStatus().isOk();
+
+        Event<Integer, Object> expectedEvent = new Event(DELETE, 1, null);
+        assertThat(receive("products"), is(sameEventExceptCreatedAt(expectedEvent)));
+        assertThat(receive("recommendations"), is(sameEventExceptCreatedAt(expectedEvent)));
+        assertThat(receive("reviews"), is(sameEventExceptCreatedAt(expectedEvent)));
+    }
+
+    private void purgeMessages(String destination) {
+        while (target.receive(0, destination) != null) {
+        }
+    }
+
+    private String receive(String destination) {
+        Message<byte[]> message = target.receive(RECEIVE_TIMEOUT_MS, destination);
+        assertNotNull(message, "No event relayed to " + destination);
+        return new String(message.getPayload());
+    }
+}
@@ -0,0 +1,132 @@
+package se.magnus.microservices.composite.product;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import se.magnus.api.core.product.Product;
+import se.magnus.api.core.recommendation.Recommendation;
+import se.magnus.microservices.composite.product.services.DownstreamConnectionPools;
+import se.magnus.microservices.composite.product.services.EventPublisher;
+import se.magnus.microservices.composite.product.services.ProductAggregateCache;
+import se.magnus.microservices.composite.product.services.ProductCompositeIntegration;
+import se.magnus.util.reactor.ReactiveInstrumentation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpStatus.OK;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+class ProductCompositeIntegrationTests {
+    private static final int CONCURRENT_CALLERS = 100;
+
+    private final AtomicInteger downstreamCalls = new AtomicInteger();
+    private SimpleMeterRegistry meterRegistry;
+    private ProductAggregateCache aggregateCache;
+
+    @BeforeEach
+    void setUp() {
+        downstreamCalls.set(0);
+        meterRegistry = new SimpleMeterRegistry();
+        aggregateCache = new ProductAggregateCache(meterRegistry, true, 100, Duration.ofSeconds(30));
+    }
+
+    @Test
+    void concurrentProductCallsAreCoalesced() {
+        ProductCompositeIntegration integration = createIntegration("{\"productId\":1,\"name\":\"name\",\"weight\":1}", true);
+
+        List<Product> products = Flux.range(0, CONCURRENT_CALLERS)
+                .flatMap(i -> integration.getProduct(1).subscribeOn(Schedulers.parallel()), CONCURRENT_CALLERS)
+                .collectList()
+                .block();
+
+        assertEquals(CONCURRENT_CALLERS, products.size());
+        products.forEach(product -> assertEquals(1, product.getProductId()));
+        assertEquals(1, downstreamCalls.get());
+        assertEquals(CONCURRENT_CALLERS - 1, collapsedCount("product"));
+    }
+
+    @Test
+    void concurrentRecommendationCallsAreCoalesced() {
+        ProductCompositeIntegration integration = createIntegration(
+                "[{\"productId\":1,\"recommendationId\":1},{\"productId\":1,\"recommendationId\":2}]", true);
+
+        List<List<Recommendation>> results = Flux.range(0, CONCURRENT_CALLERS)
+                .flatMap(i -> integration.getRecommendation(1).collectList().subscribeOn(Schedulers.parallel()), CONCURRENT_CALLERS)
+                .collectList()
+                .block();
+
+        assertEquals(CONCURRENT_CALLERS, results.size());
+        results.forEach(recommendations -> assertEquals(2, recommendations.size()));
+        assertEquals(1, downstreamCalls.get());
+        assertEquals(CONCURRENT_CALLERS - 1, collapsedCount("recommendation"));
+    }
+
+    @Test
+    void callsAreNotCoalescedAcrossAnInvalidation() {
+        ProductCompositeIntegration integration = createIntegration("{\"productId\":1,\"name\":\"name\",\"weight\":1}", true);
+
+        // The first call is still in flight when the product is written, the second one must not get its result
+        Mono<Product> beforeWrite = integration.getProduct(1).cache();
+        beforeWrite.subscribe();
+        aggregateCache.invalidate(1);
+        Product afterWrite = integration.getProduct(1).block();
+
+        assertEquals(1, afterWrite.getProductId());
+        assertEquals(2, downstreamCalls.get());
+        assertEquals(0, collapsedCount("product"));
+        beforeWrite.block();
+    }
+
+    @Test
+    void sequentialCallsAreNotCoalesced() {
+        ProductCompositeIntegration integration = createIntegration("{\"productId\":1,\"name\":\"name\",\"weight\":1}", true);
+
+        integration.getProduct(1).block();
+        integration.getProduct(1).block();
+
+        assertEquals(2, downstreamCalls.get());
+        assertEquals(0, collapsedCount("product"));
+    }
+
+    @Test
+    void coalescingCanBeDisabled() {
+        ProductCompositeIntegration integration = createIntegration("{\"productId\":1,\"name\":\"name\",\"weight\":1}", false);
+
+        Flux.range(0, 10)
+                .flatMap(i -> integration.getProduct(1).subscribeOn(Schedulers.parallel()))
+                .blockLast();
+
+        assertEquals(10, downstreamCalls.get());
+    }
+
+    private double collapsedCount(String call) {
+        return meterRegistry.get("composite.requests.collapsed").tag("call", call).counter().count();
+    }
+
+    private ProductCompositeIntegration createIntegration(String responseBody, boolean coalescingEnabled) {
+        WebClient.Builder webClientBuilder = WebClient.builder().exchangeFunction(request -> {
+            downstreamCalls.incrementAndGet();
+            return Mono.delay(Duration.ofMillis(500))
+                    .map(tick -> ClientResponse.create(OK)
+                            .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+                            .body(responseBody)
+                            .build());
+        });
+
+        return new ProductCompositeIntegration(new ObjectMapper(), Schedulers.immediate(), webClientBuilder,
+                new DownstreamConnectionPools(new MockEnvironment()), mock(EventPublisher.class), Optional.empty(), aggregateCache, meterRegistry, new ReactiveInstrumentation(meterRegistry, new MockEnvironment()), coalescingEnabled);
+    }
+}
@@ -3,33 +3,50 @@ package se.magnus.microservices.composite.product;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 import se.magnus.api.composite.product.ProductAggregate;
+import se.magnus.api.composite.product.ProductAggregatePart;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.core.recommendation.Recommendation;
 import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+import se.magnus.microservices.composite.product.services.ProductAggregateCache;
 import se.magnus.microservices.composite.product.services.ProductCompositeIntegration;
+import se.magnus.util.exceptions.DeadlineExceededException;
 import se.magnus.util.exceptions.InvalidInputException;
 import se.magnus.util.exceptions.NotFoundException;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
 
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON;
 import static reactor.core.publisher.Mono.just;
+import static se.magnus.api.event.Event.Type.DELETE;
 
 @SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"eureka.client.enabled=false"})
 class ProductCompositeServiceApplicationTests {
     private static final int PRODUCT_ID_OK = 1;
     private static final int PRODUCT_ID_NOT_FOUND = 2;
     private static final int PRODUCT_ID_INVALID = 3;
+    private static final int PRODUCT_ID_DEGRADED = 4;
+    private static final int PRODUCT_ID_DEADLINE = 5;
+    private static final int PRODUCT_ID_MANY_DETAILS = 6;
+    private static final int MAX_DETAILS = 100;
 
     @Autowired
     private WebTestClient client;
@@ -37,15 +54,57 @@ class ProductCompositeServiceApplicationTests {
     @MockBean
     private ProductCompositeIntegration compositeIntegration;
 
+    @Autowired
+    private ProductAggregateCache cache;
+
+    @Autowired
+    @Qualifier("reviewsCacheInvalidator")
+    private Consumer<Event<Integer, Object>> reviewsCacheInvalidator;
+
     @BeforeEach
     public void setUp() {
+        cache.invalidateAll();
+
         when(compositeIntegration.getProduct(PRODUCT_ID_OK))
                 .thenReturn(Mono.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
-        when(compositeIntegration.getRecommendation(PRODUCT_ID_OK))
+        when(compositeIntegration.getRecommendationsPage(PRODUCT_ID_OK, 0, MAX_DETAILS))
                 .thenReturn(Flux.fromIterable(Collections.singletonList(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock-address"))));
-        when(compositeIntegration.getReviews(PRODUCT_ID_OK))
+        when(compositeIntegration.getReviewsPage(PRODUCT_ID_OK, 0, MAX_DETAILS))
                 .thenReturn(Flux.fromIterable(Collections.singletonList(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock-address"))));
 
+        when(compositeIntegration.getProducts(List.of(PRODUCT_ID_OK, PRODUCT_ID_NOT_FOUND)))
+                .thenReturn(Flux.just(new Product(PRODUCT_ID_OK, "name", 1, "mock-address")));
+        when(compositeIntegration.getRecommendations(List.of(PRODUCT_ID_OK, PRODUCT_ID_NOT_FOUND)))
+                .thenReturn(Flux.just(new Recommendation(PRODUCT_ID_OK, 1, "author", 1, "content", "mock-address")));
+        when(compositeIntegration.getReviews(List.of(PRODUCT_ID_OK, PRODUCT_ID_NOT_FOUND)))
+                .thenReturn(Flux.just(new Review(PRODUCT_ID_OK, 1, "author", "subject", "content", "mock-address"),
+                        new Review(PRODUCT_ID_OK, 2, "author", "subject", "content", "mock-address")));
+
+        when(compositeIntegration.getReviewsPage(PRODUCT_ID_OK, 1, 2))
+                .thenReturn(Flux.just(new Review(PRODUCT_ID_OK, 2, "author", "subject", "content", "mock-address"),
+                        new Review(PRODUCT_ID_OK, 3, "author", "subject", "content", "mock-address")));
+
+        when(compositeIntegration.getProduct(PRODUCT_ID_DEGRADED))
+                .thenReturn(Mono.just(new Product(PRODUCT_ID_DEGRADED, "name", 1, "mock-address")));
+        when(compositeIntegration.getRecommendationsPage(PRODUCT_ID_DEGRADED, 0, MAX_DETAILS))
+                .thenReturn(Flux.error(new RuntimeException("recommendation-service unavailable")));
+        when(compositeIntegration.getReviewsPage(PRODUCT_ID_DEGRADED, 0, MAX_DETAILS))
+                .thenReturn(Flux.just(new Review(PRODUCT_ID_DEGRADED, 1, "author", "subject", "content", "mock-address")));
+
+        when(compositeIntegration.getProduct(PRODUCT_ID_DEADLINE))
+                .thenReturn(Mono.just(new Product(PRODUCT_ID_DEADLINE, "name", 1, "mock-address")));
+        when(compositeIntegration.getRecommendationsPage(PRODUCT_ID_DEADLINE, 0, MAX_DETAILS))
+                .thenReturn(Flux.empty());
+        when(compositeIntegration.getReviewsPage(PRODUCT_ID_DEADLINE, 0, MAX_DETAILS))
+                .thenReturn(Flux.error(new DeadlineExceededException("DEADLINE: " + PRODUCT_ID_DEADLINE)));
+
+        when(compositeIntegration.getProduct(PRODUCT_ID_MANY_DETAILS))
+                .thenReturn(Mono.just(new Product(PRODUCT_ID_MANY_DETAILS, "name", 1, "mock-address")));
+        when(compositeIntegration.getRecommendationsPage(PRODUCT_ID_MANY_DETAILS, 0, MAX_DETAILS))
+                .thenReturn(Flux.range(1, MAX_DETAILS).map(id -> new Recommendation(PRODUCT_ID_MANY_DETAILS, id, "author", 1, "content", "mock-address")));
+        when(compositeIntegration.getReviewsPage(PRODUCT_ID_MANY_DETAILS, 0, MAX_DETAILS))
+                .thenReturn(Flux.just(new Review(PRODUCT_ID_MANY_DETAILS, 1, "author", "subject", "content", "mock-address")));
+
         when(compositeIntegration.getProduct(PRODUCT_ID_NOT_FOUND)).thenThrow(new NotFoundException("NOT FOUND: " + PRODUCT_ID_NOT_FOUND));
         when(compositeIntegration.getProduct(PRODUCT_ID_INVALID)).thenThrow(new InvalidInputException("INVALID: " + PRODUCT_ID_INVALID));
     }
@@ -58,6 +117,165 @@ class ProductCompositeServiceApplicationTests {
                 .jsonPath("$.reviews.length()").isEqualTo(1);
     }
 
+    @Test
+    public void getProductWithMoreDetailsThanEmbedded() {
+        getAndVerifyProduct(PRODUCT_ID_MANY_DETAILS, OK)
+                .jsonPath("$.recommendations.length()").isEqualTo(MAX_DETAILS)
+                .jsonPath("$.hasMoreRecommendations").isEqualTo(true)
+                .jsonPath("$.reviews.length()").isEqualTo(1)
+                .jsonPath("$.hasMoreReviews").isEqualTo(false);
+    }
+
+    @Test
+    public void getProductFromCache() {
+        getAndVerifyProduct(PRODUCT_ID_OK, OK)
+                .jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK);
+        getAndVerifyProduct(PRODUCT_ID_OK, OK)
+                .jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK);
+
+        verify(compositeIntegration, times(1)).getProduct(PRODUCT_ID_OK);
+    }
+
+    @Test
+    public void degradedProductIsNotCached() {
+        getAndVerifyProduct(PRODUCT_ID_DEGRADED, OK)
+                .jsonPath("$.recommendations.length()").isEqualTo(0)
+                .jsonPath("$.reviews.length()").isEqualTo(1);
+        getAndVerifyProduct(PRODUCT_ID_DEGRADED, OK);
+
+        verify(compositeIntegration, times(2)).getProduct(PRODUCT_ID_DEGRADED);
+    }
+
+    @Test
+    public void exceededDeadlineIsNotDegraded() {
+        getAndVerifyProduct(PRODUCT_ID_DEADLINE, GATEWAY_TIMEOUT)
+                .jsonPath("$.message").isEqualTo("DEADLINE: " + PRODUCT_ID_DEADLINE);
+    }
+
+    @Test
+    public void invalidateCachedProductOnEvent() {
+        getAndVerifyProduct(PRODUCT_ID_OK, OK);
+
+        reviewsCacheInvalidator.accept(new Event(DELETE, PRODUCT_ID_OK, null));
+
+        getAndVerifyProduct(PRODUCT_ID_OK, OK)
+                .jsonPath("$.reviews.length()").isEqualTo(1);
+
+        verify(compositeIntegration, times(2)).getReviewsPage(PRODUCT_ID_OK, 0, MAX_DETAILS);
+    }
+
+    @Test
+    public void getProductWithSelectedFields() {
+        client.get()
+                .uri("/product-composite/" + PRODUCT_ID_OK + "?fields=product,reviews")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectBody()
+                .jsonPath("$.productId").isEqualTo(PRODUCT_ID_OK)
+                .jsonPath("$.name").isEqualTo("name")
+                .jsonPath("$.reviews.length()").isEqualTo(1)
+                .jsonPath("$.recommendations").doesNotExist();
+
+        verify(compositeIntegration, never()).getRecommendationsPage(PRODUCT_ID_OK, 0, MAX_DETAILS);
+    }
+
+    @Test
+    public void getProductWithSelectedFieldsFromCache() {
+        getAndVerifyProduct(PRODUCT_ID_OK, OK);
+
+        client.get()
+                .uri("/product-composite/" + PRODUCT_ID_OK + "?fields=recommendations")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectBody()
+                .jsonPath("$.recommendations.length()").isEqualTo(1)
+                .jsonPath("$.name").doesNotExist()
+                .jsonPath("$.weight").doesNotExist()
+                .jsonPath("$.reviews").doesNotExist();
+
+        verify(compositeIntegration, times(1)).getRecommendationsPage(PRODUCT_ID_OK, 0, MAX_DETAILS);
+    }
+
+    @Test
+    public void getProductWithSelectedFieldsNotFound() {
+        client.get()
+                .uri("/product-composite/" + PRODUCT_ID_NOT_FOUND + "?fields=reviews")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(NOT_FOUND);
+    }
+
+    @Test
+    public void getProductWithInvalidFields() {
+        client.get()
+                .uri("/product-composite/" + PRODUCT_ID_OK + "?fields=product,price")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(UNPROCESSABLE_ENTITY)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Invalid fields: product,price, expected any of product, recommendations, reviews");
+    }
+
+    @Test
+    public void getProductReviewsPage() {
+        client.get()
+                .uri("/product-composite/" + PRODUCT_ID_OK + "/reviews?afterReviewId=1&pageSize=2")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[0].reviewId").isEqualTo(2)
+                .jsonPath("$[1].reviewId").isEqualTo(3);
+    }
+
+    @Test
+    public void getProductStream() {
+        Flux<ProductAggregatePart> parts = client.get()
+                .uri("/product-composite/" + PRODUCT_ID_OK + "/stream")
+                .accept(APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .returnResult(ProductAggregatePart.class)
+                .getResponseBody();
+
+        StepVerifier.create(parts)
+                .expectNextMatches(part -> part.getType() == ProductAggregatePart.Type.PRODUCT && part.getProductId() == PRODUCT_ID_OK)
+                .expectNextCount(2)
+                .verifyComplete();
+
+        // Bounded like the aggregate, the stream never reads all details of a product
+        verify(compositeIntegration, never()).getRecommendation(PRODUCT_ID_OK);
+        verify(compositeIntegration, never()).getReviews(PRODUCT_ID_OK);
+    }
+
+    @Test
+    public void getProductStreamNotFound() {
+        client.get()
+                .uri("/product-composite/" + PRODUCT_ID_NOT_FOUND + "/stream")
+                .accept(APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isEqualTo(NOT_FOUND);
+    }
+
+    @Test
+    public void getProductsByIds() {
+        client.get()
+                .uri("/product-composite?productIds=" + PRODUCT_ID_OK + "," + PRODUCT_ID_NOT_FOUND)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].productId").isEqualTo(PRODUCT_ID_OK)
+                .jsonPath("$[0].recommendations.length()").isEqualTo(1)
+                .jsonPath("$[0].reviews.length()").isEqualTo(2);
+    }
+
     @Test
     public void getProductNotFound() {
         getAndVerifyProduct(PRODUCT_ID_NOT_FOUND, NOT_FOUND)
@@ -0,0 +1,78 @@
+package se.magnus.microservices.composite.product;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import se.magnus.microservices.composite.product.services.RequestCoalescer;
+import se.magnus.util.exceptions.DeadlineExceededException;
+import se.magnus.util.http.RequestDeadline;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestCoalescerTests {
+    private static final Duration CALL_DURATION = Duration.ofMillis(200);
+
+    private final RequestCoalescer<Integer, Integer> coalescer = new RequestCoalescer<>("test", new SimpleMeterRegistry(), true);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void joinerIsNotFailedByTheDeadlineOfTheFirstCaller() {
+        Flux<Integer> shortDeadline = coalescer.flux(1, this::call)
+                .contextWrite(context -> RequestDeadline.putInContext(context, Instant.now().plusMillis(50)));
+        Flux<Integer> longDeadline = coalescer.flux(1, this::call)
+                .contextWrite(context -> RequestDeadline.putInContext(context, Instant.now().plusSeconds(10)));
+
+        StepVerifier.create(Flux.merge(
+                        shortDeadline.onErrorResume(DeadlineExceededException.class, error -> Flux.just(-1)),
+                        longDeadline))
+                .expectNext(-1, 1)
+                .verifyComplete();
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void callersWithTheSameDeadlineShareTheCall() {
+        Instant deadline = Instant.now().plusSeconds(10);
+
+        StepVerifier.create(Flux.merge(coalescer.flux(1, this::call), coalescer.flux(1, this::call))
+                        .contextWrite(context -> RequestDeadline.putInContext(context, deadline)))
+                .expectNext(1, 1)
+                .verifyComplete();
+
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void callersOfDifferentGenerationsDoNotShareTheCall() {
+        AtomicInteger generation = new AtomicInteger();
+        RequestCoalescer<Integer, Integer> generationCoalescer = new RequestCoalescer<>("test", new SimpleMeterRegistry(), true, key -> (long) generation.get());
+
+        Flux<Integer> beforeInvalidation = generationCoalescer.flux(1, this::call).cache();
+        beforeInvalidation.subscribe();
+        generation.incrementAndGet();
+
+        StepVerifier.create(Flux.merge(generationCoalescer.flux(1, this::call), generationCoalescer.flux(1, this::call)))
+                .expectNext(1, 1)
+                .verifyComplete();
+        beforeInvalidation.blockLast();
+
+        assertEquals(2, calls.get());
+    }
+
+    // Behaves like a WebClient call through DeadlinePropagationFilterFunction
+    private Flux<Integer> call() {
+        return Flux.deferContextual(context -> {
+            calls.incrementAndGet();
+            Duration remaining = RequestDeadline.remaining(context).orElse(Duration.ofSeconds(30));
+            return remaining.compareTo(CALL_DURATION) < 0 ?
+                    Flux.<Integer>error(new DeadlineExceededException("Request deadline exceeded")).delaySubscription(remaining) :
+                    Flux.just(1).delaySubscription(CALL_DURATION);
+        });
+    }
+}
@@ -0,0 +1,33 @@
+package se.magnus.microservices.core.product.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import se.magnus.api.event.Event;
+
+import java.util.function.Consumer;
+
+@Configuration
+@Slf4j
+public class CacheInvalidationConfig {
+    private final ProductCache cache;
+
+    @Autowired
+    public CacheInvalidationConfig(ProductCache cache) {
+        this.cache = cache;
+    }
+
+    // Bound to products-applied without a group, so every instance learns about every write, whatever partition its
+    // messageProcessor consumes. The events are only sent once the owner has written to Mongo, see AppliedEventPublisher
+    @Bean
+    public Consumer<Event<Integer, Object>> productCacheInvalidator() {
+        return event -> {
+            if (event.getKey() == null) {
+                log.warn("Got a {} event without a key, can't invalidate the product cache", event.getEventType());
+                return;
+            }
+            cache.invalidate(event.getKey());
+        };
+    }
+}
@@ -1,46 +1,103 @@
 package se.magnus.microservices.core.product.services;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.core.product.ProductService;
 import se.magnus.api.event.Event;
 import se.magnus.api.exceptions.EventProcessingException;
+import se.magnus.util.messaging.AppliedEventPublisher;
+import se.magnus.util.messaging.DeadLetterPublisher;
+import se.magnus.util.messaging.EventDeduplicator;
+import se.magnus.util.messaging.EventMetrics;
+import se.magnus.util.messaging.KeyedCoalescing;
+import se.magnus.util.reactor.KeyOrderedProcessing;
 
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static se.magnus.api.event.Event.Type.DELETE;
 
 @Configuration
 @Slf4j
 public class MessageProcessorConfig {
     private final ProductService productService;
+    private final EventDeduplicator deduplicator;
+    private final EventMetrics eventMetrics;
+    private final AppliedEventPublisher appliedEventPublisher;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final int reactiveConsumerConcurrency;
 
-    public MessageProcessorConfig(ProductService productService) {
+    public MessageProcessorConfig(ProductService productService,
+                                  EventDeduplicator deduplicator,
+                                  EventMetrics eventMetrics,
+                                  AppliedEventPublisher appliedEventPublisher,
+                                  DeadLetterPublisher deadLetterPublisher,
+                                  @Value("${app.reactive-consumer.concurrency:8}") int reactiveConsumerConcurrency) {
         this.productService = productService;
+        this.deduplicator = deduplicator;
+        this.eventMetrics = eventMetrics;
+        this.appliedEventPublisher = appliedEventPublisher;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.reactiveConsumerConcurrency = reactiveConsumerConcurrency;
     }
 
     @Bean
     public Consumer<Event<Integer, Product>> messageProcessor() {
         return event -> {
-            log.info("Process message created at {}...", event.getEventCreatedAt());
-            switch (event.getEventType()) {
-                case CREATE -> {
-                    Product product = event.getData();
-                    log.info("Create product with ID: {}", product.getProductId());
-                    productService.createProduct(product).block();
-                }
-                case DELETE -> {
-                    int productId = event.getKey();
-                    log.info("Delete product with productId: {}", productId);
-                    productService.deleteProduct(productId).block();
-                }
-                default -> {
-                    String errorMessage = "Incorrect event type: " + event.getEventType() + ", exepcted a CREATE or DELETE event";
-                    log.warn(errorMessage);
-                    throw new EventProcessingException(errorMessage);
-                }
-            }
+            processEvent(event).block();
             log.info("Message processing done!");
         };
     }
+
+    // Micro-batches, coalesced by KeyedCoalescing with a DELETE superseding the earlier events for its product
+    @Bean
+    public Consumer<List<Event<Integer, Product>>> batchMessageProcessor() {
+        return events -> {
+            List<Event<Integer, Product>> coalesced = KeyedCoalescing.coalesce(events, Event::getKey, event -> event.getEventType() == DELETE);
+            log.info("Process a batch of {} events, {} left after coalescing", events.size(), coalesced.size());
+            coalesced.forEach(event -> processEvent(event).block());
+            log.info("Message processing done!");
+        };
+    }
+
+    // Lanes as in KeyOrderedProcessing, failed events go through DeadLetterPublisher
+    @Bean
+    public Function<Flux<Event<Integer, Product>>, Mono<Void>> reactiveMessageProcessor() {
+        return events -> KeyOrderedProcessing.process(events, Event::getKey, reactiveConsumerConcurrency,
+                event -> deadLetterPublisher.processOrDeadLetter(event, () -> processEvent(event))
+                        .doOnSuccess(result -> log.info("Message processing done!")));
+    }
+
+    private Mono<Void> processEvent(Event<Integer, Product> event) {
+        return deduplicator.applyOnce(event.getEventId(),
+                        () -> eventMetrics.timed(event.getEventType(), event.getEventCreatedAt(), () -> applyEvent(event)))
+                .then(appliedEventPublisher.published(event));
+    }
+
+    private Mono<Void> applyEvent(Event<Integer, Product> event) {
+        log.info("Process message created at {}...", event.getEventCreatedAt());
+        return switch (event.getEventType()) {
+            case CREATE -> {
+                Product product = event.getData();
+                log.info("Create product with ID: {}", product.getProductId());
+                yield productService.createProduct(product).then();
+            }
+            case DELETE -> {
+                int productId = event.getKey();
+                log.info("Delete product with productId: {}", productId);
+                yield productService.deleteProduct(productId);
+            }
+            default -> {
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", exepcted a CREATE or DELETE event";
+                log.warn(errorMessage);
+                throw new EventProcessingException(errorMessage);
+            }
+        };
+    }
 }
@@ -0,0 +1,28 @@
+package se.magnus.microservices.core.product.services;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.magnus.microservices.core.product.persistent.ProductEntity;
+import se.magnus.util.messaging.InvalidatedCache;
+
+import java.time.Duration;
+
+// Near-cache of product entities in each instance, invalidated on every instance by productCacheInvalidator
+@Component
+public class ProductCache extends InvalidatedCache<Integer, ProductEntity> {
+
+    @Autowired
+    public ProductCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.product-cache.enabled:true}") boolean enabled,
+            @Value("${app.product-cache.maximum-size:10000}") long maximumSize,
+            @Value("${app.product-cache.expire-after-write:60s}") Duration expireAfterWrite) {
+        super("productCache", Caffeine.newBuilder()
+                        .maximumSize(maximumSize)
+                        .expireAfterWrite(expireAfterWrite),
+                meterRegistry, enabled);
+    }
+}
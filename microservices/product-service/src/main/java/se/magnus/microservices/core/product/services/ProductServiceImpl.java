@@ -2,8 +2,10 @@ package se.magnus.microservices.core.product.services;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.core.product.ProductService;
@@ -11,7 +13,11 @@ import se.magnus.microservices.core.product.persistent.ProductEntity;
 import se.magnus.microservices.core.product.persistent.ProductRepository;
 import se.magnus.util.exceptions.InvalidInputException;
 import se.magnus.util.exceptions.NotFoundException;
+import se.magnus.util.http.RequestDeadline;
 import se.magnus.util.http.ServiceUtil;
+import se.magnus.util.reactor.ReactiveInstrumentation;
+
+import java.util.List;
 
 import static reactor.core.publisher.Mono.error;
 
@@ -20,22 +26,55 @@ import static reactor.core.publisher.Mono.error;
 public class ProductServiceImpl implements ProductService {
     private final ProductRepository repository;
     private final ProductMapper mapper;
+    private final ProductCache cache;
     private final ServiceUtil serviceUtil;
+    private final ReactiveInstrumentation instrumentation;
+    private final int maxBatchSize;
 
     @Autowired
-    public ProductServiceImpl(ProductRepository repository, ProductMapper mapper, ServiceUtil serviceUtil) {
+    public ProductServiceImpl(ProductRepository repository, ProductMapper mapper, ProductCache cache, ServiceUtil serviceUtil, ReactiveInstrumentation instrumentation,
+                              @Value("${app.max-batch-size:200}") int maxBatchSize) {
         this.repository = repository;
         this.mapper = mapper;
+        this.cache = cache;
         this.serviceUtil = serviceUtil;
+        this.instrumentation = instrumentation;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
     public Mono<Product> getProduct(int productId) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 
-        return repository.findByProductId(productId)
+        ProductEntity cached = cache.get(productId);
+        long cacheGeneration = cache.generation(productId);
+        Mono<ProductEntity> entity = cached != null
+                ? Mono.just(cached)
+                : repository.findByProductId(productId).doOnNext(e -> cache.put(productId, e, cacheGeneration));
+
+        return RequestDeadline.check()
+                .then(entity)
                 .switchIfEmpty(error(new NotFoundException("No product found for productId: " + productId)))
-                .log()
+                .transform(instrumentation.mono("product.get"))
+                .map(mapper::entityToApi)
+                .map(p -> {
+                    p.setServiceAddress(serviceUtil.getServiceAddress());
+                    return p;
+                });
+    }
+
+    @Override
+    public Flux<Product> getProducts(List<Integer> productIds) {
+        if (productIds.isEmpty() || productIds.size() > maxBatchSize) {
+            throw new InvalidInputException("Invalid number of productIds: " + productIds.size() + ", expected 1 to " + maxBatchSize);
+        }
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        return RequestDeadline.check()
+                .thenMany(repository.findByProductIdIn(productIds))
+                .transform(instrumentation.flux("product.get-batch"))
                 .map(mapper::entityToApi)
                 .map(p -> {
                     p.setServiceAddress(serviceUtil.getServiceAddress());
@@ -49,8 +88,9 @@ public class ProductServiceImpl implements ProductService {
 
         ProductEntity entity = mapper.apiToEntity(body);
         return repository.save(entity)
-                .log()
+                .transform(instrumentation.mono("product.create"))
                 .onErrorMap(DuplicateKeyException.class, ex -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId()))
+                .doOnSuccess(e -> cache.invalidate(body.getProductId()))
                 .map(mapper::entityToApi);
     }
 
@@ -59,8 +99,9 @@ public class ProductServiceImpl implements ProductService {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
         log.debug("deleteProduct: tries to delete an entity with productId: {}", productId);
         return repository.findByProductId(productId)
-                .log()
+                .transform(instrumentation.mono("product.delete"))
                 .map(e -> repository.delete(e))
-                .flatMap(e -> e);
+                .flatMap(e -> e)
+                .then(Mono.fromRunnable(() -> cache.invalidate(productId)));
     }
 }
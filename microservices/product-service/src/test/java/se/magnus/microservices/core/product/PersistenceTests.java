@@ -89,6 +89,15 @@ class PersistenceTests {
                 .verifyComplete();
     }
 
+    @Test
+    public void getByProductIds() {
+        StepVerifier.create(repository.save(new ProductEntity(2, "n", 2))).expectNextCount(1).verifyComplete();
+
+        StepVerifier.create(repository.findByProductIdIn(List.of(savedEntity.getProductId(), 2, 3)))
+                .expectNextCount(2)
+                .verifyComplete();
+    }
+
     @Test
     public void duplicateError() {
         ProductEntity entity = new ProductEntity(savedEntity.getProductId(), "n", 1);
@@ -9,12 +9,21 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import org.springframework.test.web.reactive.server.WebTestClient.BodyContentSpec;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import se.magnus.api.core.product.Product;
 import se.magnus.api.event.Event;
+import se.magnus.microservices.core.product.persistent.ProductEntity;
 import se.magnus.microservices.core.product.persistent.ProductRepository;
+import se.magnus.microservices.core.product.services.ProductCache;
 import se.magnus.util.exceptions.InvalidInputException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
@@ -25,7 +34,10 @@ import static reactor.core.publisher.Mono.just;
 import static se.magnus.api.event.Event.Type.CREATE;
 import static se.magnus.api.event.Event.Type.DELETE;
 
-@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {"eureka.client.enabled=false"})
+@SpringBootTest(webEnvironment = RANDOM_PORT, properties = {
+        "eureka.client.enabled=false",
+        "app.reactive-consumer.back-off-initial-interval=1ms",
+        "app.reactive-consumer.back-off-max-interval=1ms"})
 @ComponentScan("se.magnus")
 class ProductServiceApplicationTests {
     @Autowired
@@ -34,13 +46,29 @@ class ProductServiceApplicationTests {
     @Autowired
     private ProductRepository repository;
 
+    @Autowired
+    private ProductCache cache;
+
     @Autowired
     @Qualifier("messageProcessor")
     private Consumer<Event<Integer, Product>> messageProcessor;
 
+    @Autowired
+    @Qualifier("batchMessageProcessor")
+    private Consumer<List<Event<Integer, Product>>> batchMessageProcessor;
+
+    @Autowired
+    @Qualifier("reactiveMessageProcessor")
+    private Function<Flux<Event<Integer, Product>>, Mono<Void>> reactiveMessageProcessor;
+
+    @Autowired
+    @Qualifier("productCacheInvalidator")
+    private Consumer<Event<Integer, Object>> productCacheInvalidator;
+
     @BeforeEach
     public void setupDb() {
         repository.deleteAll().block();
+        cache.invalidateAll();
     }
 
 
@@ -60,6 +88,52 @@ class ProductServiceApplicationTests {
                 .jsonPath("$.productId").isEqualTo(productId);
     }
 
+    @Test
+    public void cachedProductIsInvalidatedByBroadcast() {
+        int productId = 1;
+        sendCreateProductEvent(productId);
+
+        getAndVerifyProduct(productId, OK).jsonPath("$.name").isEqualTo("Name 1");
+        assertNotNull(cache.get(productId));
+
+        // A change applied by the instance that consumes another partition is not seen until the broadcast arrives
+        ProductEntity entity = repository.findByProductId(productId).block();
+        entity.setName("Changed elsewhere");
+        repository.save(entity).block();
+        getAndVerifyProduct(productId, OK).jsonPath("$.name").isEqualTo("Name 1");
+
+        productCacheInvalidator.accept(new Event(CREATE, productId, null));
+        assertNull(cache.get(productId));
+        getAndVerifyProduct(productId, OK).jsonPath("$.name").isEqualTo("Changed elsewhere");
+    }
+
+    @Test
+    public void getProductsByIds() {
+        sendCreateProductEvent(1);
+        sendCreateProductEvent(2);
+        sendCreateProductEvent(3);
+
+        client.get()
+                .uri("/product?productIds=1,3,13")
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(OK)
+                .expectHeader().contentType(APPLICATION_JSON)
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2);
+    }
+
+    @Test
+    public void getTooManyProductsByIds() {
+        client.get()
+                .uri("/product?productIds=" + IntStream.rangeClosed(1, 201).mapToObj(String::valueOf).collect(Collectors.joining(",")))
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isEqualTo(UNPROCESSABLE_ENTITY)
+                .expectBody()
+                .jsonPath("$.message").isEqualTo("Invalid number of productIds: 201, expected 1 to 200");
+    }
+
     @Test
     public void getProductNotFound() {
         int productIdNotFound = 13;
@@ -91,6 +165,19 @@ class ProductServiceApplicationTests {
         assertEquals("Duplicate key, Product Id: " + productId, thrown.getMessage());
     }
 
+    @Test
+    public void redeliveredEventIsDropped() {
+        int productId = 1;
+        Event<Integer, Product> event = new Event(CREATE, productId, new Product(productId, "Name " + productId, productId, "SA"));
+
+        messageProcessor.accept(event);
+        assertNotNull(repository.findByProductId(productId).block());
+
+        // A redelivery of the same event is dropped before it reaches the repository, so no duplicate key error
+        messageProcessor.accept(event);
+        assertEquals(1, repository.count().block());
+    }
+
     @Test
     public void deleteProduct() {
         int productId = 1;
@@ -116,6 +203,39 @@ class ProductServiceApplicationTests {
                 .expectBody();
     }
 
+    @Test
+    public void processEventsReactively() {
+        List<Event<Integer, Product>> events = new ArrayList<>();
+        IntStream.rangeClosed(1, 20).forEach(productId ->
+                events.add(new Event(CREATE, productId, new Product(productId, "Name " + productId, productId, "SA"))));
+        // Deletes must be applied after the creates for the same product, even though products are processed concurrently
+        IntStream.rangeClosed(1, 10).forEach(productId -> events.add(new Event(DELETE, productId, null)));
+        // A failing event is retried and dead-lettered without stopping the stream
+        events.add(new Event(CREATE, 20, new Product(20, "Duplicate", 20, "SA")));
+
+        reactiveMessageProcessor.apply(Flux.fromIterable(events)).block();
+
+        assertEquals(10, repository.count().block());
+        assertNull(repository.findByProductId(1).block());
+        assertEquals("Name 20", repository.findByProductId(20).block().getName());
+    }
+
+    @Test
+    public void processBatchWithSupersededEvents() {
+        sendCreateProductEvent(3);
+
+        // The first CREATE of product 1 is superseded by the DELETE and never reaches the database
+        batchMessageProcessor.accept(List.of(
+                new Event(CREATE, 1, new Product(1, "Old name", 1, "SA")),
+                new Event(CREATE, 2, new Product(2, "Name 2", 2, "SA")),
+                new Event(DELETE, 1, null),
+                new Event(CREATE, 1, new Product(1, "New name", 1, "SA")),
+                new Event(DELETE, 3, null)));
+
+        assertEquals("New name", repository.findByProductId(1).block().getName());
+        assertNotNull(repository.findByProductId(2).block());
+        assertNull(repository.findByProductId(3).block());
+    }
 
     private void sendCreateProductEvent(int productId) {
         Product product = new Product(productId, "Name " + productId, productId, "SA");
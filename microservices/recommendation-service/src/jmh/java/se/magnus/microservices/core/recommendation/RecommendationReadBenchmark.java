@@ -0,0 +1,148 @@
+package se.magnus.microservices.core.recommendation;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+import se.magnus.microservices.core.recommendation.persistent.RecommendationEntity;
+import se.magnus.microservices.core.recommendation.persistent.RecommendationProjectionsImpl;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Reads all recommendations of a product from 8 threads at once, as whole documents like the derived findByProductId
+// and with the projected query. Needs a running MongoDB on localhost:27017, e.g. docker-compose up -d mongodb, and
+// uses its own database. The documents examined and the bytes returned are reported as the
+// secondary results docsExamined and bytesReturned, totals per iteration to divide by the number of reads.
+// Run with: ./gradlew :microservices:recommendation-service:jmh
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+public class RecommendationReadBenchmark {
+    private static final String DATABASE = "recommendation-benchmark";
+    private static final String COLLECTION = "recommendations";
+    private static final String MONGODB_URI = "mongodb://localhost:27017";
+
+    @Param({"10", "500"})
+    private int recommendations;
+
+    private MongoClient client;
+    private ReactiveMongoTemplate template;
+    private RecommendationProjectionsImpl projections;
+    private ReadStats documentStats;
+    private ReadStats projectedStats;
+
+    private record ReadStats(long docsExamined, long bytesReturned) {
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ReadCounters {
+        public long docsExamined;
+        public long bytesReturned;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            docsExamined = 0;
+            bytesReturned = 0;
+        }
+
+        void add(ReadStats stats) {
+            docsExamined += stats.docsExamined();
+            bytesReturned += stats.bytesReturned();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        client = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(MONGODB_URI))
+                .applyToClusterSettings(cluster -> cluster.serverSelectionTimeout(5, TimeUnit.SECONDS))
+                .build());
+        template = new ReactiveMongoTemplate(client, DATABASE);
+        try {
+            template.executeCommand("{ping: 1}").block(Duration.ofSeconds(10));
+        } catch (RuntimeException e) {
+            client.close();
+            throw new IllegalStateException("RecommendationReadBenchmark needs a MongoDB at " + MONGODB_URI + ", e.g. docker-compose up -d mongodb", e);
+        }
+        projections = new RecommendationProjectionsImpl(template);
+
+        template.dropCollection(RecommendationEntity.class).block();
+        ReactiveIndexOperations indexOps = template.indexOps(RecommendationEntity.class);
+        IndexResolver.create(template.getConverter().getMappingContext())
+                .resolveIndexFor(RecommendationEntity.class)
+                .forEach(index -> indexOps.ensureIndex(index).block());
+
+        List<RecommendationEntity> entities = IntStream.rangeClosed(1, recommendations)
+                .mapToObj(id -> new RecommendationEntity(1, id, "Author " + id, id % 5, "Content of recommendation " + id))
+                .toList();
+        template.insertAll(entities).blockLast();
+
+        Query documentQuery = Query.query(where("productId").is(1));
+        Document projectedFields = new Document("_id", 0).append("productId", 1).append("recommendationId", 1)
+                .append("author", 1).append("rating", 1).append("content", 1);
+        documentStats = readStats(documentQuery.getQueryObject(), new Document(), null);
+        projectedStats = readStats(documentQuery.getQueryObject(), projectedFields, RecommendationEntity.PRODUCT_RECOMMENDATION_INDEX);
+    }
+
+    @TearDown
+    public void tearDown() {
+        template.dropCollection(RecommendationEntity.class).block();
+        client.close();
+    }
+
+    @Benchmark
+    public List<RecommendationEntity> readDocuments(ReadCounters counters) {
+        counters.add(documentStats);
+        return template.find(Query.query(where("productId").is(1)), RecommendationEntity.class).collectList().block();
+    }
+
+    @Benchmark
+    public List<RecommendationEntity> readProjections(ReadCounters counters) {
+        counters.add(projectedStats);
+        return projections.findProjectedByProductId(1).collectList().block();
+    }
+
+    // The same read once outside the measurement, with an explain for the documents the server examined
+    private ReadStats readStats(Document filter, Document projection, String hint) {
+        var find = client.getDatabase(DATABASE).getCollection(COLLECTION, RawBsonDocument.class).find(filter).projection(projection);
+        if (hint != null) {
+            find = find.hintString(hint);
+        }
+        long bytes = Flux.from(find).map(document -> (long) document.getByteBuffer().remaining()).reduce(0L, Long::sum).block();
+
+        Document command = new Document("find", COLLECTION).append("filter", filter).append("projection", projection);
+        if (hint != null) {
+            command.append("hint", hint);
+        }
+        Document stats = template.executeCommand(new Document("explain", command).append("verbosity", "executionStats"))
+                .map(explain -> explain.get("executionStats", Document.class))
+                .block();
+        return new ReadStats(((Number) stats.get("totalDocsExamined")).longValue(), bytes);
+    }
+}
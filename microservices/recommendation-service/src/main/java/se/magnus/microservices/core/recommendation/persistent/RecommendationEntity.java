@@ -7,8 +7,11 @@ import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "recommendations")
-@CompoundIndexes({@CompoundIndex(name="prod-rec-id", def = "{'productId':1, 'recommendationId': 1}", unique = true)})
+@CompoundIndexes({
+        @CompoundIndex(name = RecommendationEntity.PRODUCT_RECOMMENDATION_INDEX, def = "{'productId':1, 'recommendationId': 1}", unique = true)})
 public class RecommendationEntity {
+    public static final String PRODUCT_RECOMMENDATION_INDEX = "prod-rec-id";
+
     @Id
     private String id;
 
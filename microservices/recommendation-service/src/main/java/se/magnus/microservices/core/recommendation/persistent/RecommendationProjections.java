@@ -0,0 +1,14 @@
+package se.magnus.microservices.core.recommendation.persistent;
+
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+
+// Reads that return only the fields the API needs. The entities have no id or version and must not be saved
+public interface RecommendationProjections {
+    Flux<RecommendationEntity> findProjectedByProductId(int productId);
+
+    Flux<RecommendationEntity> findProjectedByProductIdIn(Collection<Integer> productIds);
+
+    Flux<RecommendationEntity> findProjectedPageByProductId(int productId, int afterRecommendationId, int pageSize);
+}
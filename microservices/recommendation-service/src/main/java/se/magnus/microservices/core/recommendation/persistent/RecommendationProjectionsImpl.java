@@ -0,0 +1,49 @@
+package se.magnus.microservices.core.recommendation.persistent;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+// Excludes _id and version, so only the fields of the API type are returned, and hints the unique prod-rec-id
+// index. The documents are still fetched, covering author and content as well would store the free text content
+// a second time in an index that every write has to maintain. Spring Data MongoDB 4.0 has no @Hint for repository
+// methods, hence the template
+public class RecommendationProjectionsImpl implements RecommendationProjections {
+    private final ReactiveMongoTemplate template;
+
+    public RecommendationProjectionsImpl(ReactiveMongoTemplate template) {
+        this.template = template;
+    }
+
+    @Override
+    public Flux<RecommendationEntity> findProjectedByProductId(int productId) {
+        return template.find(projected(where("productId").is(productId)), RecommendationEntity.class);
+    }
+
+    @Override
+    public Flux<RecommendationEntity> findProjectedByProductIdIn(Collection<Integer> productIds) {
+        return template.find(projected(where("productId").in(productIds)), RecommendationEntity.class);
+    }
+
+    @Override
+    public Flux<RecommendationEntity> findProjectedPageByProductId(int productId, int afterRecommendationId, int pageSize) {
+        Query query = projected(where("productId").is(productId).and("recommendationId").gt(afterRecommendationId))
+                .with(Sort.by("recommendationId"))
+                .limit(pageSize);
+        return template.find(query, RecommendationEntity.class);
+    }
+
+    private static Query projected(Criteria criteria) {
+        Query query = Query.query(criteria).withHint(RecommendationEntity.PRODUCT_RECOMMENDATION_INDEX);
+        query.fields()
+                .exclude("_id")
+                .include("productId", "recommendationId", "author", "rating", "content");
+        return query;
+    }
+}
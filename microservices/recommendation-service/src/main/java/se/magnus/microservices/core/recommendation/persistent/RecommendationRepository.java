@@ -2,9 +2,11 @@ package se.magnus.microservices.core.recommendation.persistent;
 
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.List;
-
-public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String> {
+public interface RecommendationRepository extends ReactiveCrudRepository<RecommendationEntity, String>, RecommendationProjections {
     Flux<RecommendationEntity> findByProductId(int productId);
+
+    // Runs as a single deleteMany, returns the number of removed documents
+    Mono<Long> deleteByProductId(int productId);
 }
@@ -2,47 +2,110 @@ package se.magnus.microservices.core.recommendation.services;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import se.magnus.api.core.recommendation.Recommendation;
 import se.magnus.api.core.recommendation.RecommendationService;
 import se.magnus.api.event.Event;
 import se.magnus.api.exceptions.EventProcessingException;
+import se.magnus.util.messaging.AppliedEventPublisher;
+import se.magnus.util.messaging.DeadLetterPublisher;
+import se.magnus.util.messaging.EventDeduplicator;
+import se.magnus.util.messaging.EventMetrics;
+import se.magnus.util.messaging.KeyedCoalescing;
+import se.magnus.util.reactor.KeyOrderedProcessing;
 
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static se.magnus.api.event.Event.Type.DELETE;
 
 @Configuration
 @Slf4j
 public class MessageProcessorConfig {
     protected final RecommendationService recommendationService;
+    private final EventDeduplicator deduplicator;
+    private final EventMetrics eventMetrics;
+    private final AppliedEventPublisher appliedEventPublisher;
+    private final DeadLetterPublisher deadLetterPublisher;
+    private final int reactiveConsumerConcurrency;
 
     @Autowired
-    public MessageProcessorConfig(RecommendationService recommendationService) {
+    public MessageProcessorConfig(RecommendationService recommendationService,
+                                  EventDeduplicator deduplicator,
+                                  EventMetrics eventMetrics,
+                                  AppliedEventPublisher appliedEventPublisher,
+                                  DeadLetterPublisher deadLetterPublisher,
+                                  @Value("${app.reactive-consumer.concurrency:8}") int reactiveConsumerConcurrency) {
         this.recommendationService = recommendationService;
+        this.deduplicator = deduplicator;
+        this.eventMetrics = eventMetrics;
+        this.appliedEventPublisher = appliedEventPublisher;
+        this.deadLetterPublisher = deadLetterPublisher;
+        this.reactiveConsumerConcurrency = reactiveConsumerConcurrency;
     }
 
     @Bean
     public Consumer<Event<Integer, Recommendation>> messageProcessor() {
         return event -> {
-            switch (event.getEventType()) {
-                case CREATE -> {
-                    Recommendation recommendation = event.getData();
-                    log.info("Create recommendation with ID: {}/{}", recommendation.getProductId(), recommendation.getRecommendationId());
-                    recommendationService.createRecommendation(recommendation).block();
-                }
-
-                case DELETE -> {
-                    int productId = event.getKey();
-                    log.info("Delete recommendations with productId: {}", productId);
-                    recommendationService.deleteRecommendation(productId).block();
-                }
-                default -> {
-                    String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
-                    log.warn(errorMessage);
-                    throw new EventProcessingException(errorMessage);
-                }
-            }
+            processEvent(event).block();
             log.info("Message Processing done!");
         };
     }
+
+    // Micro-batches, coalesced by KeyedCoalescing with a DELETE superseding the earlier events for its product
+    @Bean
+    public Consumer<List<Event<Integer, Recommendation>>> batchMessageProcessor() {
+        return events -> {
+            List<Event<Integer, Recommendation>> coalesced = KeyedCoalescing.coalesce(events, Event::getKey, event -> event.getEventType() == DELETE);
+            log.info("Process a batch of {} events, {} left after coalescing", events.size(), coalesced.size());
+            coalesced.forEach(event -> processEvent(event).block());
+            log.info("Message Processing done!");
+        };
+    }
+
+    // Lanes as in KeyOrderedProcessing, failed events go through DeadLetterPublisher
+    @Bean
+    public Function<Flux<Event<Integer, Recommendation>>, Mono<Void>> reactiveMessageProcessor() {
+        return events -> KeyOrderedProcessing.process(events, Event::getKey, reactiveConsumerConcurrency,
+                event -> deadLetterPublisher.processOrDeadLetter(event, () -> processEvent(event))
+                        .doOnSuccess(result -> log.info("Message Processing done!")));
+    }
+
+    private Mono<Void> processEvent(Event<Integer, Recommendation> event) {
+        return deduplicator.applyOnce(event.getEventId(),
+                        () -> eventMetrics.timed(event.getEventType(), event.getEventCreatedAt(), () -> applyEvent(event)))
+                .then(appliedEventPublisher.published(event));
+    }
+
+    private Mono<Void> applyEvent(Event<Integer, Recommendation> event) {
+        return switch (event.getEventType()) {
+            case CREATE -> {
+                Recommendation recommendation = event.getData();
+                log.info("Create recommendation with ID: {}/{}", recommendation.getProductId(), recommendation.getRecommendationId());
+                yield recommendationService.createRecommendation(recommendation).then();
+            }
+
+            case CREATE_BATCH -> {
+                List<Recommendation> recommendations = event.getBatch();
+                log.info("Create a batch of {} recommendations for productId: {}", recommendations.size(), event.getKey());
+                yield recommendationService.createRecommendations(recommendations).then();
+            }
+
+            case DELETE -> {
+                int productId = event.getKey();
+                log.info("Delete recommendations with productId: {}", productId);
+                yield recommendationService.deleteRecommendation(productId);
+            }
+            default -> {
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE, CREATE_BATCH or DELETE event";
+                log.warn(errorMessage);
+                throw new EventProcessingException(errorMessage);
+            }
+        };
+    }
 }
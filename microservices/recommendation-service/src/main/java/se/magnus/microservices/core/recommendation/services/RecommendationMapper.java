@@ -21,4 +21,6 @@ public interface RecommendationMapper {
      Recommendation entityToApi(RecommendationEntity entity);
 
      List<Recommendation> entryListToApiList(List<RecommendationEntity> entryList);
+
+     List<RecommendationEntity> apiListToEntityList(List<Recommendation> apiList);
 }
@@ -3,6 +3,7 @@ package se.magnus.microservices.core.recommendation.services;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
@@ -12,7 +13,11 @@ import se.magnus.api.core.recommendation.RecommendationService;
 import se.magnus.microservices.core.recommendation.persistent.RecommendationEntity;
 import se.magnus.microservices.core.recommendation.persistent.RecommendationRepository;
 import se.magnus.util.exceptions.InvalidInputException;
+import se.magnus.util.http.RequestDeadline;
 import se.magnus.util.http.ServiceUtil;
+import se.magnus.util.reactor.ReactiveInstrumentation;
+
+import java.util.List;
 
 @RestController
 public class RecommendationServiceImpl implements RecommendationService {
@@ -20,20 +25,66 @@ public class RecommendationServiceImpl implements RecommendationService {
     private final ServiceUtil serviceUtil;
     private final RecommendationRepository repository;
     private final RecommendationMapper mapper;
+    private final ReactiveInstrumentation instrumentation;
+    private final int maxPageSize;
+    private final int maxBatchSize;
 
     @Autowired
-    public RecommendationServiceImpl(ServiceUtil serviceUtil, RecommendationRepository repository, RecommendationMapper mapper) {
+    public RecommendationServiceImpl(ServiceUtil serviceUtil, RecommendationRepository repository, RecommendationMapper mapper,
+                                     ReactiveInstrumentation instrumentation, @Value("${app.max-page-size:100}") int maxPageSize,
+                                     @Value("${app.max-batch-size:200}") int maxBatchSize) {
         this.serviceUtil = serviceUtil;
         this.repository = repository;
         this.mapper = mapper;
+        this.instrumentation = instrumentation;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
     }
 
     @Override
     public Flux<Recommendation> getRecommendation(int productId) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 
-        return repository.findByProductId(productId)
-                .log()
+        return RequestDeadline.check()
+                .thenMany(repository.findProjectedByProductId(productId))
+                .transform(instrumentation.flux("recommendation.get"))
+                .map(mapper::entityToApi)
+                .map(r -> {
+                    r.setServiceAddress(serviceUtil.getServiceAddress());
+                    return r;
+                });
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendations(List<Integer> productIds) {
+        if (productIds.isEmpty() || productIds.size() > maxBatchSize) {
+            throw new InvalidInputException("Invalid number of productIds: " + productIds.size() + ", expected 1 to " + maxBatchSize);
+        }
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        return RequestDeadline.check()
+                .thenMany(repository.findProjectedByProductIdIn(productIds))
+                .transform(instrumentation.flux("recommendation.get-batch"))
+                .map(mapper::entityToApi)
+                .map(r -> {
+                    r.setServiceAddress(serviceUtil.getServiceAddress());
+                    return r;
+                });
+    }
+
+    @Override
+    public Flux<Recommendation> getRecommendationsPage(int productId, int afterRecommendationId, int pageSize) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (afterRecommendationId < 0) throw new InvalidInputException("Invalid afterRecommendationId: " + afterRecommendationId);
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new InvalidInputException("Invalid pageSize: " + pageSize + ", expected 1 to " + maxPageSize);
+        }
+
+        return RequestDeadline.check()
+                .thenMany(repository.findProjectedPageByProductId(productId, afterRecommendationId, pageSize))
+                .transform(instrumentation.flux("recommendation.get-page"))
                 .map(mapper::entityToApi)
                 .map(r -> {
                     r.setServiceAddress(serviceUtil.getServiceAddress());
@@ -48,17 +99,49 @@ public class RecommendationServiceImpl implements RecommendationService {
         RecommendationEntity entity = mapper.apiToEntity(body);
 
         return repository.save(entity)
-                .log()
+                .transform(instrumentation.mono("recommendation.create"))
                 .onErrorMap(DuplicateKeyException.class,
                         e -> new InvalidInputException("Duplicate key, Product Id: " + body.getProductId() + ", Recommendation Id: " + body.getRecommendationId()))
                 .map(mapper::entityToApi);
     }
 
+    @Override
+    public Flux<Recommendation> createRecommendations(List<Recommendation> body) {
+        if (body.isEmpty()) throw new InvalidInputException("No recommendations given");
+        body.forEach(r -> {
+            if (r.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + r.getProductId());
+        });
+
+        LOG.debug("createRecommendations: will insert {} recommendations for productId: {}", body.size(), body.get(0).getProductId());
+
+        return repository.saveAll(mapper.apiListToEntityList(body))
+                .collectList()
+                // The ordered insertMany stops at the first duplicate, with the documents before it already inserted,
+                // so a redelivery of the batch would fail on them forever. Insert one at a time instead and skip the
+                // recommendations that already exist
+                .onErrorResume(DuplicateKeyException.class, e -> saveSkippingDuplicates(body))
+                .flatMapIterable(entities -> entities)
+                .transform(instrumentation.flux("recommendation.create-batch"))
+                .map(mapper::entityToApi);
+    }
+
+    private Mono<List<RecommendationEntity>> saveSkippingDuplicates(List<Recommendation> body) {
+        return Flux.fromIterable(body)
+                .concatMap(r -> repository.save(mapper.apiToEntity(r))
+                        .onErrorResume(DuplicateKeyException.class, e -> {
+                            LOG.info("createRecommendations: skips the already existing recommendation {}/{}", r.getProductId(), r.getRecommendationId());
+                            return Mono.empty();
+                        }))
+                .collectList();
+    }
+
     @Override
     public Mono<Void> deleteRecommendation(int productId) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
 
         LOG.debug("deleteRecommendation: tries to delete recommendations for the product with productId: {}", productId);
-        return repository.deleteAll(repository.findByProductId(productId));
+        return repository.deleteByProductId(productId)
+                .doOnNext(deleted -> LOG.debug("deleteRecommendation: deleted {} recommendations for the product with productId: {}", deleted, productId))
+                .then();
     }
 }
@@ -12,6 +12,7 @@ import se.magnus.microservices.core.recommendation.persistent.RecommendationEnti
 import se.magnus.microservices.core.recommendation.persistent.RecommendationRepository;
 
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -67,6 +68,18 @@ class PersistenceTests {
         assertFalse(repository.existsById(savedEntity.getId()).block());
     }
 
+    @Test
+    public void deleteByProductIdWithLargeFanOut() {
+        repository.saveAll(IntStream.rangeClosed(1, 2000).mapToObj(recommendationId -> new RecommendationEntity(3, recommendationId, "a", 3, "c")).toList()).blockLast();
+
+        assertEquals(2000, repository.deleteByProductId(3).block());
+        assertEquals(0, repository.findByProductId(3).count().block());
+        assertEquals(0, repository.deleteByProductId(3).block());
+
+        // Recommendations of other products are left alone
+        assertTrue(repository.existsById(savedEntity.getId()).block());
+    }
+
     @Test
     public void getByProductId() {
         List<RecommendationEntity> entityList = repository.findByProductId(savedEntity.getProductId()).collectList().block();
@@ -74,6 +87,48 @@ class PersistenceTests {
         assertEqualsRecommendation(savedEntity, entityList.get(0));
     }
 
+    @Test
+    public void getByProductIds() {
+        repository.save(new RecommendationEntity(2, 1, "a", 3, "new book")).block();
+        repository.save(new RecommendationEntity(3, 1, "a", 3, "new book")).block();
+
+        List<RecommendationEntity> entityList = repository.findProjectedByProductIdIn(List.of(savedEntity.getProductId(), 2)).collectList().block();
+        assertEquals(2, entityList.size());
+    }
+
+    @Test
+    public void getPageByProductId() {
+        for (int recommendationId = 2; recommendationId <= 5; recommendationId++) {
+            repository.save(new RecommendationEntity(1, recommendationId, "a", 3, "new book")).block();
+        }
+
+        List<RecommendationEntity> firstPage = repository.findProjectedPageByProductId(1, 0, 2).collectList().block();
+        assertEquals(List.of(1, 2), firstPage.stream().map(RecommendationEntity::getRecommendationId).toList());
+
+        List<RecommendationEntity> lastPage = repository.findProjectedPageByProductId(1, 4, 2).collectList().block();
+        assertEquals(List.of(5), lastPage.stream().map(RecommendationEntity::getRecommendationId).toList());
+    }
+
+    @Test
+    public void getProjectedByProductId() {
+        repository.save(new RecommendationEntity(1, 2, "a", 3, "new book")).block();
+        repository.save(new RecommendationEntity(2, 1, "a", 3, "new book")).block();
+
+        List<RecommendationEntity> entityList = repository.findProjectedByProductId(1).collectList().block();
+        assertEquals(2, entityList.size());
+        RecommendationEntity projected = entityList.stream().filter(e -> e.getRecommendationId() == 1).findFirst().get();
+        assertNull(projected.getId());
+        assertNull(projected.getVersion());
+        assertEquals(savedEntity.getAuthor(), projected.getAuthor());
+        assertEquals(savedEntity.getRating(), projected.getRating());
+        assertEquals(savedEntity.getContent(), projected.getContent());
+
+        assertEquals(3, repository.findProjectedByProductIdIn(List.of(1, 2)).count().block());
+
+        List<RecommendationEntity> page = repository.findProjectedPageByProductId(1, 1, 2).collectList().block();
+        assertEquals(List.of(2), page.stream().map(RecommendationEntity::getRecommendationId).toList());
+    }
+
     @Test
     public void duplicateError() {
         assertThrows(DuplicateKeyException.class, () -> {
@@ -7,12 +7,19 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import se.magnus.api.core.recommendation.Recommendation;
 import se.magnus.api.event.Event;
 import se.magnus.microservices.core.recommendation.persistent.RecommendationRepository;
 import se.magnus.util.exceptions.InvalidInputException;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -20,7 +27,10 @@ import static org.springframework.http.HttpStatus.*;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 import static reactor.core.publisher.Mono.just;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {"eureka.client.enabled=false"})
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "eureka.client.enabled=false",
+        "app.reactive-consumer.back-off-initial-interval=1ms",
+        "app.reactive-consumer.back-off-max-interval=1ms"})
 class RecommendationApplicationTests {
     @Autowired
     private WebTestClient client;
@@ -32,6 +42,10 @@ class RecommendationApplicationTests {
     @Qualifier("messageProcessor")
     private Consumer<Event<Integer, Recommendation>> messageProcessor;
 
+    @Autowired
+    @Qualifier("reactiveMessageProcessor")
+    private Function<Flux<Event<Integer, Recommendation>>, Mono<Void>> reactiveMessageProcessor;
+
     @BeforeEach
     public void setupDb() {
         repository.deleteAll().block();
@@ -52,6 +66,52 @@ class RecommendationApplicationTests {
                 .jsonPath("$[0].productId").isEqualTo(productId);
     }
 
+    @Test
+    public void getRecommendationsByProductIds() {
+        sendCreateRecommendationEvent(1, 1);
+        sendCreateRecommendationEvent(1, 2);
+        sendCreateRecommendationEvent(2, 1);
+        sendCreateRecommendationEvent(3, 1);
+
+        getAndVerifyRecommendationsByProductId("?productIds=1,2", OK)
+                .jsonPath("$.length()").isEqualTo(3);
+    }
+
+    @Test
+    public void getRecommendationsPageForManyProductsIsRejected() {
+        client.get()
+                .uri("/recommendation?productIds=1,2&pageSize=2")
+                .exchange()
+                .expectStatus().isEqualTo(BAD_REQUEST);
+    }
+
+    @Test
+    public void getTooManyRecommendationsByProductIds() {
+        getAndVerifyRecommendationsByProductId("?productIds=" + IntStream.rangeClosed(1, 201).mapToObj(String::valueOf).collect(Collectors.joining(",")), UNPROCESSABLE_ENTITY)
+                .jsonPath("$.message").isEqualTo("Invalid number of productIds: 201, expected 1 to 200");
+    }
+
+    @Test
+    public void getRecommendationsPage() {
+        sendCreateRecommendationEvent(1, 1);
+        sendCreateRecommendationEvent(1, 2);
+        sendCreateRecommendationEvent(1, 3);
+
+        getAndVerifyRecommendationsByProductId("?productId=1&pageSize=2", OK)
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].recommendationId").isEqualTo(2);
+
+        getAndVerifyRecommendationsByProductId("?productId=1&afterRecommendationId=2&pageSize=2", OK)
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].recommendationId").isEqualTo(3);
+    }
+
+    @Test
+    public void getRecommendationsPageInvalidPageSize() {
+        getAndVerifyRecommendationsByProductId("?productId=1&pageSize=101", UNPROCESSABLE_ENTITY)
+                .jsonPath("$.path").isEqualTo("/recommendation")
+                .jsonPath("$.message").isEqualTo("Invalid pageSize: 101, expected 1 to 100");
+    }
 
     @Test
     public void getRecommendationsMissingParameter() {
@@ -112,6 +172,43 @@ class RecommendationApplicationTests {
         sendDeleteRecommendationEvent(productId);
     }
 
+    @Test
+    public void createRecommendationsInBatch() {
+        List<Recommendation> recommendations = IntStream.rangeClosed(1, 120)
+                .mapToObj(recommendationId -> new Recommendation(1, recommendationId, "Author " + recommendationId, recommendationId, "C", "SA"))
+                .toList();
+
+        messageProcessor.accept(Event.createBatch(1, recommendations));
+
+        assertEquals(120, repository.findByProductId(1).count().block());
+    }
+
+    @Test
+    public void createRecommendationsInBatchSkipsExistingOnes() {
+        // Mongo has already inserted recommendation 1 when it fails on 2, as in a batch that is redelivered after a crash
+        sendCreateRecommendationEvent(1, 2);
+
+        List<Recommendation> recommendations = IntStream.rangeClosed(1, 3)
+                .mapToObj(recommendationId -> new Recommendation(1, recommendationId, "Author " + recommendationId, recommendationId, "C", "SA"))
+                .toList();
+        messageProcessor.accept(Event.createBatch(1, recommendations));
+
+        assertEquals(3, repository.findByProductId(1).count().block());
+    }
+
+    @Test
+    public void processEventsReactively() {
+        List<Event<Integer, Recommendation>> events = new ArrayList<>();
+        IntStream.rangeClosed(1, 10).forEach(productId -> IntStream.rangeClosed(1, 3).forEach(recommendationId ->
+                events.add(new Event(Event.Type.CREATE, productId, new Recommendation(productId, recommendationId, "Author", 1, "C", "SA")))));
+        events.add(new Event(Event.Type.DELETE, 1, null));
+
+        reactiveMessageProcessor.apply(Flux.fromIterable(events)).block();
+
+        assertEquals(27, repository.count().block());
+        assertEquals(0, repository.findByProductId(1).count().block());
+    }
+
     private WebTestClient.BodyContentSpec getAndVerifyRecommendationsByProductId(int productId, HttpStatus httpStatus) {
         return getAndVerifyRecommendationsByProductId("?productId=" + productId, httpStatus);
     }
@@ -0,0 +1,102 @@
+package se.magnus.microservices.core.review;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import se.magnus.api.core.review.Review;
+import se.magnus.microservices.core.review.persistent.ReviewEntity;
+import se.magnus.microservices.core.review.persistent.ReviewRepository;
+import se.magnus.microservices.core.review.services.ReviewMapper;
+import se.magnus.microservices.core.review.services.ReviewMapperImpl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Reads all reviews of a product from an in-memory H2 database, once as managed entities mapped with ReviewMapper
+// and once with the constructor projection used by ReviewServiceImpl. Both run in a read-only transaction, like the
+// @Transactional(readOnly = true) repository methods. The gc profiler reports the bytes allocated per read.
+// Run with: ./gradlew :microservices:review-service:jmh
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReviewReadBenchmark {
+    private static final String ENTITY_QUERY = "SELECT r FROM ReviewEntity r WHERE r.productId = :productId";
+
+    @Param({"1000"})
+    private int reviews;
+
+    private EntityManagerFactory entityManagerFactory;
+    private ReviewMapper mapper;
+    private String projectionQuery;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(new DriverManagerDataSource("jdbc:h2:mem:review-db;DB_CLOSE_DELAY=-1"));
+        factoryBean.setPackagesToScan(ReviewEntity.class.getPackageName());
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(Map.of("hibernate.hbm2ddl.auto", "create-drop", "hibernate.jdbc.batch_size", "50"));
+        factoryBean.afterPropertiesSet();
+        entityManagerFactory = factoryBean.getObject();
+
+        mapper = new ReviewMapperImpl();
+        projectionQuery = ReviewRepository.class.getMethod("findReviewsByProductId", int.class).getAnnotation(Query.class).value();
+
+        EntityManager em = entityManagerFactory.createEntityManager();
+        em.getTransaction().begin();
+        for (int reviewId = 1; reviewId <= reviews; reviewId++) {
+            em.persist(new ReviewEntity(1, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content of review " + reviewId));
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        entityManagerFactory.close();
+    }
+
+    @Benchmark
+    public List<Review> readEntities() {
+        return inReadOnlyTransaction(em -> mapper.entityListToApiList(
+                em.createQuery(ENTITY_QUERY, ReviewEntity.class).setParameter("productId", 1).getResultList()));
+    }
+
+    @Benchmark
+    public List<Review> readProjections() {
+        return inReadOnlyTransaction(em ->
+                em.createQuery(projectionQuery, Review.class).setParameter("productId", 1).getResultList());
+    }
+
+    private List<Review> inReadOnlyTransaction(Function<EntityManager, List<Review>> query) {
+        EntityManager em = entityManagerFactory.createEntityManager();
+        try {
+            // The same session settings as HibernateJpaDialect applies for a read-only Spring transaction
+            Session session = em.unwrap(Session.class);
+            session.setDefaultReadOnly(true);
+            session.setHibernateFlushMode(FlushMode.MANUAL);
+            em.getTransaction().begin();
+            List<Review> result = query.apply(em);
+            em.getTransaction().commit();
+            return result;
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import reactor.core.scheduler.Scheduler;
 import reactor.core.scheduler.Schedulers;
+import se.magnus.util.reactor.VirtualThreadSchedulers;
 
 import java.util.concurrent.Executors;
 
@@ -18,14 +19,27 @@ import java.util.concurrent.Executors;
 @Slf4j
 public class ReviewApplication {
     private final Integer connectionPoolSize;
+    private final boolean virtualThreads;
 
     @Autowired
-    public ReviewApplication(@Value("${spring.datasource.maximum-pool-size:10}") Integer connectionPoolSize) {
+    public ReviewApplication(
+            @Value("${spring.datasource.maximum-pool-size:10}") Integer connectionPoolSize,
+            @Value("${app.scheduler.virtual-threads:false}") boolean virtualThreads) {
         this.connectionPoolSize = connectionPoolSize;
+        this.virtualThreads = virtualThreads;
     }
 
     @Bean
     public Scheduler jdbcScheduler() {
+        if (virtualThreads) {
+            // No more JDBC calls than connections in flight, the rest wait on parked virtual threads. The MySQL driver
+            // does its socket I/O inside synchronized blocks, which pins the carrier thread for the whole call, so no
+            // more calls than carriers can run either. Raise -Djdk.virtualThreadScheduler.parallelism to allow more
+            int carriers = Integer.getInteger("jdk.virtualThreadScheduler.parallelism", Runtime.getRuntime().availableProcessors());
+            int maxConcurrency = Math.min(connectionPoolSize, carriers);
+            log.info("Creates a virtual thread jdbcScheduler limited to {}, connectionPoolSize = {}, carriers = {}", maxConcurrency, connectionPoolSize, carriers);
+            return VirtualThreadSchedulers.newConcurrencyLimited("jdbc", maxConcurrency);
+        }
         log.info("Creates a jdbcScheduler with connectionPoolsSize = {}" + connectionPoolSize);
         return Schedulers.fromExecutor(Executors.newFixedThreadPool(connectionPoolSize));
     }
@@ -0,0 +1,29 @@
+package se.magnus.microservices.core.review.persistent;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+@Configuration
+@ConditionalOnProperty(name = "app.persistence", havingValue = "r2dbc")
+public class R2dbcPersistenceConfig {
+
+    @Bean
+    public DatabaseClient reviewDatabaseClient(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+
+    @Bean
+    public ReviewR2dbcRepository reviewR2dbcRepository(DatabaseClient reviewDatabaseClient) {
+        return new ReviewR2dbcRepository(reviewDatabaseClient);
+    }
+
+    @Bean
+    public TransactionalOperator reviewTransactionalOperator(ConnectionFactory connectionFactory) {
+        return TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+    }
+}
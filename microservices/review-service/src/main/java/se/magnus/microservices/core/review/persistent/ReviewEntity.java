@@ -5,7 +5,8 @@ import jakarta.persistence.*;
 @Entity
 @Table(name = "reviews", indexes = {@Index(name = "review_unique_idx", unique = true, columnList = "productId,reviewId")})
 public class ReviewEntity {
-    @Id @GeneratedValue
+    // An AUTO_INCREMENT id, the same table as schema-r2dbc.sql so both persistence options can use it
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
 
     @Version
@@ -0,0 +1,113 @@
+package se.magnus.microservices.core.review.persistent;
+
+import io.r2dbc.spi.Row;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Non-blocking access to the same reviews table as ReviewRepository, used when app.persistence=r2dbc.
+// Rows are mapped to entities one by one as the driver emits them, without a persistence context
+public class ReviewR2dbcRepository {
+    private static final String SELECT = "SELECT id, version, product_id, review_id, author, subject, content FROM reviews";
+    private static final String INSERT = "INSERT INTO reviews (version, product_id, review_id, author, subject, content) VALUES ";
+
+    // Each chunk is written as one multi-row insert, AUTO_INCREMENT hands out the ids of all its rows
+    private static final int ROWS_PER_INSERT = 50;
+
+    private final DatabaseClient client;
+
+    public ReviewR2dbcRepository(DatabaseClient client) {
+        this.client = client;
+    }
+
+    public Flux<ReviewEntity> findByProductId(int productId) {
+        return client.sql(SELECT + " WHERE product_id = :productId")
+                .bind("productId", productId)
+                .map(ReviewR2dbcRepository::toEntity)
+                .all();
+    }
+
+    public Flux<ReviewEntity> findByProductIdIn(Collection<Integer> productIds) {
+        return client.sql(SELECT + " WHERE product_id IN (:productIds)")
+                .bind("productIds", productIds)
+                .map(ReviewR2dbcRepository::toEntity)
+                .all();
+    }
+
+    public Flux<ReviewEntity> findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(int productId, int afterReviewId, int pageSize) {
+        return client.sql(SELECT + " WHERE product_id = :productId AND review_id > :afterReviewId ORDER BY review_id ASC LIMIT :pageSize")
+                .bind("productId", productId)
+                .bind("afterReviewId", afterReviewId)
+                .bind("pageSize", pageSize)
+                .map(ReviewR2dbcRepository::toEntity)
+                .all();
+    }
+
+    public Mono<Long> count() {
+        return client.sql("SELECT COUNT(*) FROM reviews")
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    public Mono<Long> insert(ReviewEntity entity) {
+        return insertRows(List.of(entity));
+    }
+
+    public Mono<Long> insertAll(List<ReviewEntity> entities) {
+        return Flux.fromIterable(entities)
+                .buffer(ROWS_PER_INSERT)
+                .concatMap(this::insertRows)
+                .reduce(0L, Long::sum);
+    }
+
+    public Mono<Long> deleteByProductId(int productId) {
+        return client.sql("DELETE FROM reviews WHERE product_id = :productId")
+                .bind("productId", productId)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    public Mono<Long> deleteAll() {
+        return client.sql("DELETE FROM reviews")
+                .fetch()
+                .rowsUpdated();
+    }
+
+    private Mono<Long> insertRows(List<ReviewEntity> entities) {
+        String values = IntStream.range(0, entities.size())
+                .mapToObj(i -> "(0, :productId" + i + ", :reviewId" + i + ", :author" + i + ", :subject" + i + ", :content" + i + ")")
+                .collect(Collectors.joining(", "));
+
+        GenericExecuteSpec spec = client.sql(INSERT + values);
+        for (int i = 0; i < entities.size(); i++) {
+            ReviewEntity entity = entities.get(i);
+            spec = spec.bind("productId" + i, entity.getProductId()).bind("reviewId" + i, entity.getReviewId());
+            spec = bindNullable(spec, "author" + i, entity.getAuthor());
+            spec = bindNullable(spec, "subject" + i, entity.getSubject());
+            spec = bindNullable(spec, "content" + i, entity.getContent());
+        }
+        return spec.fetch().rowsUpdated();
+    }
+
+    private static GenericExecuteSpec bindNullable(GenericExecuteSpec spec, String name, String value) {
+        return value == null ? spec.bindNull(name, String.class) : spec.bind(name, value);
+    }
+
+    private static ReviewEntity toEntity(Row row) {
+        ReviewEntity entity = new ReviewEntity(
+                row.get("product_id", Integer.class),
+                row.get("review_id", Integer.class),
+                row.get("author", String.class),
+                row.get("subject", String.class),
+                row.get("content", String.class));
+        entity.setId(row.get("id", Integer.class));
+        entity.setVersion(row.get("version", Integer.class));
+        return entity;
+    }
+}
@@ -1,11 +1,39 @@
 package se.magnus.microservices.core.review.persistent;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
+import se.magnus.api.core.review.Review;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ReviewRepository extends CrudRepository<ReviewEntity, Integer> {
     @Transactional(readOnly = true)
     List<ReviewEntity> findByProductId(int productId);
+
+    // Projections straight into the API type. No entities are created, so nothing is added to the persistence context
+    // and the results do not need to be mapped
+    @Transactional(readOnly = true)
+    @Query("SELECT new se.magnus.api.core.review.Review(r.productId, r.reviewId, r.author, r.subject, r.content) FROM ReviewEntity r WHERE r.productId = :productId")
+    List<Review> findReviewsByProductId(@Param("productId") int productId);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT new se.magnus.api.core.review.Review(r.productId, r.reviewId, r.author, r.subject, r.content) FROM ReviewEntity r WHERE r.productId IN :productIds")
+    List<Review> findReviewsByProductIdIn(@Param("productIds") Collection<Integer> productIds);
+
+    @Transactional(readOnly = true)
+    @Query("SELECT new se.magnus.api.core.review.Review(r.productId, r.reviewId, r.author, r.subject, r.content) FROM ReviewEntity r " +
+            "WHERE r.productId = :productId AND r.reviewId > :afterReviewId ORDER BY r.reviewId ASC")
+    List<Review> findReviewsPageByProductId(@Param("productId") int productId, @Param("afterReviewId") int afterReviewId, Pageable pageable);
+
+    // One DELETE statement instead of loading every entity and deleting it row by row.
+    // Bypasses the @Version check, which is fine since all reviews of the product are removed
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ReviewEntity r WHERE r.productId = :productId")
+    int deleteByProductId(@Param("productId") int productId);
 }
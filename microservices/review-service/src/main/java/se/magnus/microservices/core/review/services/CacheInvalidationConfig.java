@@ -0,0 +1,33 @@
+package se.magnus.microservices.core.review.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import se.magnus.api.event.Event;
+
+import java.util.function.Consumer;
+
+@Configuration
+@Slf4j
+public class CacheInvalidationConfig {
+    private final ReviewCache cache;
+
+    @Autowired
+    public CacheInvalidationConfig(ReviewCache cache) {
+        this.cache = cache;
+    }
+
+    // With a partitioned reviews destination, only the owning instance applies a product's events. The other
+    // instances drop their cached reviews when the owner announces the write on reviews-applied
+    @Bean
+    public Consumer<Event<Integer, Object>> reviewCacheInvalidator() {
+        return event -> {
+            if (event.getKey() == null) {
+                log.warn("Got a {} event without a key, can't invalidate the review cache", event.getEventType());
+                return;
+            }
+            cache.invalidate(event.getKey());
+        };
+    }
+}
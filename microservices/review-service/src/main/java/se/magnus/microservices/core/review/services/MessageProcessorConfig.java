@@ -8,41 +8,81 @@ import se.magnus.api.core.review.Review;
 import se.magnus.api.core.review.ReviewService;
 import se.magnus.api.event.Event;
 import se.magnus.api.exceptions.EventProcessingException;
+import se.magnus.util.messaging.AppliedEventPublisher;
+import se.magnus.util.messaging.EventDeduplicator;
+import se.magnus.util.messaging.EventMetrics;
+import se.magnus.util.messaging.KeyedCoalescing;
 
+import java.util.List;
 import java.util.function.Consumer;
 
+import static se.magnus.api.event.Event.Type.DELETE;
+
 @Configuration
 @Slf4j
 public class MessageProcessorConfig {
     protected final ReviewService reviewService;
+    private final EventDeduplicator deduplicator;
+    private final EventMetrics eventMetrics;
+    private final AppliedEventPublisher appliedEventPublisher;
 
     @Autowired
-    public MessageProcessorConfig(ReviewService reviewService) {
+    public MessageProcessorConfig(ReviewService reviewService, EventDeduplicator deduplicator, EventMetrics eventMetrics, AppliedEventPublisher appliedEventPublisher) {
         this.reviewService = reviewService;
+        this.deduplicator = deduplicator;
+        this.eventMetrics = eventMetrics;
+        this.appliedEventPublisher = appliedEventPublisher;
     }
 
     @Bean
     public Consumer<Event<Integer, Review>> messageProcessor() {
         return event -> {
-            switch (event.getEventType()) {
-                case CREATE -> {
-                    Review review = event.getData();
-                    log.info("Create review with ID: {}/{}", review.getProductId(), review.getReviewId());
-                    reviewService.createReview(review).block();
-                }
-
-                case DELETE -> {
-                    int productId = event.getKey();
-                    log.info("Delete reviews with productId: {}", productId);
-                    reviewService.deleteReviews(productId).block();
-                }
-                default -> {
-                    String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE or DELETE event";
-                    log.warn(errorMessage);
-                    throw new EventProcessingException(errorMessage);
-                }
-            }
+            processEvent(event);
             log.info("Message Processing done!");
         };
     }
+
+    // Micro-batches, coalesced by KeyedCoalescing, a DELETE drops the reviews created earlier in the batch
+    @Bean
+    public Consumer<List<Event<Integer, Review>>> batchMessageProcessor() {
+        return events -> {
+            List<Event<Integer, Review>> coalesced = KeyedCoalescing.coalesce(events, Event::getKey, event -> event.getEventType() == DELETE);
+            log.info("Process a batch of {} events, {} left after coalescing", events.size(), coalesced.size());
+            coalesced.forEach(this::processEvent);
+            log.info("Message Processing done!");
+        };
+    }
+
+    private void processEvent(Event<Integer, Review> event) {
+        deduplicator.applyOnceBlocking(event.getEventId(),
+                () -> eventMetrics.timedBlocking(event.getEventType(), event.getEventCreatedAt(), () -> applyEvent(event)));
+        appliedEventPublisher.published(event).block();
+    }
+
+    private void applyEvent(Event<Integer, Review> event) {
+        switch (event.getEventType()) {
+            case CREATE -> {
+                Review review = event.getData();
+                log.info("Create review with ID: {}/{}", review.getProductId(), review.getReviewId());
+                reviewService.createReview(review).block();
+            }
+
+            case CREATE_BATCH -> {
+                List<Review> reviews = event.getBatch();
+                log.info("Create a batch of {} reviews for productId: {}", reviews.size(), event.getKey());
+                reviewService.createReviews(reviews).blockLast();
+            }
+
+            case DELETE -> {
+                int productId = event.getKey();
+                log.info("Delete reviews with productId: {}", productId);
+                reviewService.deleteReviews(productId).block();
+            }
+            default -> {
+                String errorMessage = "Incorrect event type: " + event.getEventType() + ", expected a CREATE, CREATE_BATCH or DELETE event";
+                log.warn(errorMessage);
+                throw new EventProcessingException(errorMessage);
+            }
+        }
+    }
 }
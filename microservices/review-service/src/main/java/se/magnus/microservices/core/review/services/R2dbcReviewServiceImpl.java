@@ -0,0 +1,168 @@
+package se.magnus.microservices.core.review.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.core.review.ReviewService;
+import se.magnus.microservices.core.review.persistent.ReviewEntity;
+import se.magnus.microservices.core.review.persistent.ReviewR2dbcRepository;
+import se.magnus.util.exceptions.InvalidInputException;
+import se.magnus.util.http.RequestDeadline;
+import se.magnus.util.http.ServiceUtil;
+import se.magnus.util.reactor.ReactiveInstrumentation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Same contract as ReviewServiceImpl, but on a non-blocking driver. Nothing is moved to the jdbcScheduler,
+// reviews are emitted downstream while the rows are still being read. They share the ReviewCache, a miss is
+// streamed and the reviews are cached once the last row has been read
+@RestController
+@ConditionalOnProperty(name = "app.persistence", havingValue = "r2dbc")
+public class R2dbcReviewServiceImpl implements ReviewService {
+    private static final Logger LOG = LoggerFactory.getLogger(R2dbcReviewServiceImpl.class);
+    private final ServiceUtil serviceUtil;
+    private final ReviewR2dbcRepository repository;
+    private final ReviewMapper mapper;
+    private final ReviewCache cache;
+    private final TransactionalOperator transactionalOperator;
+    private final ReactiveInstrumentation instrumentation;
+    private final int maxPageSize;
+    private final int maxBatchSize;
+
+    public R2dbcReviewServiceImpl(ServiceUtil serviceUtil, ReviewR2dbcRepository repository, ReviewMapper mapper, ReviewCache cache,
+                                  TransactionalOperator reviewTransactionalOperator, ReactiveInstrumentation instrumentation,
+                                  @Value("${app.max-page-size:100}") int maxPageSize,
+                                  @Value("${app.max-batch-size:200}") int maxBatchSize) {
+        this.serviceUtil = serviceUtil;
+        this.repository = repository;
+        this.mapper = mapper;
+        this.cache = cache;
+        this.transactionalOperator = reviewTransactionalOperator;
+        this.instrumentation = instrumentation;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public Flux<Review> getReviews(int productId) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+
+        LOG.info("Will get reviews for product with id={}", productId);
+
+        List<Review> cached = cache.get(productId);
+        if (cached != null) {
+            return RequestDeadline.check().thenMany(Flux.fromIterable(cached)).transform(instrumentation.flux("review.get"));
+        }
+
+        return Flux.defer(() -> {
+                    long cacheGeneration = cache.generation(productId);
+                    List<Review> reviews = new ArrayList<>();
+                    return withDeadline(repository.findByProductId(productId))
+                            .doOnNext(reviews::add)
+                            .doOnComplete(() -> cache.put(productId, List.copyOf(reviews), cacheGeneration));
+                })
+                .transform(instrumentation.flux("review.get"));
+    }
+
+    @Override
+    public Flux<Review> getReviews(List<Integer> productIds) {
+        if (productIds.isEmpty() || productIds.size() > maxBatchSize) {
+            throw new InvalidInputException("Invalid number of productIds: " + productIds.size() + ", expected 1 to " + maxBatchSize);
+        }
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        LOG.info("Will get reviews for {} products", productIds.size());
+
+        return withDeadline(repository.findByProductIdIn(productIds)).transform(instrumentation.flux("review.get-batch"));
+    }
+
+    @Override
+    public Flux<Review> getReviewsPage(int productId, int afterReviewId, int pageSize) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (afterReviewId < 0) throw new InvalidInputException("Invalid afterReviewId: " + afterReviewId);
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new InvalidInputException("Invalid pageSize: " + pageSize + ", expected 1 to " + maxPageSize);
+        }
+
+        LOG.info("Will get up to {} reviews after reviewId={} for product with id={}", pageSize, afterReviewId, productId);
+
+        return withDeadline(repository.findByProductIdAndReviewIdGreaterThanOrderByReviewIdAsc(productId, afterReviewId, pageSize))
+                .transform(instrumentation.flux("review.get-page"));
+    }
+
+    @Override
+    public Mono<Review> createReview(Review body) {
+        if (body.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + body.getProductId());
+
+        ReviewEntity entity = mapper.apiToEntity(body);
+        return repository.insert(entity)
+                .doOnNext(rows -> cache.invalidate(body.getProductId()))
+                .doOnNext(rows -> LOG.debug("createReview: created a review entity: {}/{}", body.getProductId(), body.getReviewId()))
+                .thenReturn(mapper.entityToApi(entity))
+                .onErrorMap(DataIntegrityViolationException.class,
+                        div -> new InvalidInputException("Duplicate key, product Id: " + body.getProductId() + ", Review Id: " + body.getReviewId()));
+    }
+
+    @Override
+    public Flux<Review> createReviews(List<Review> body) {
+        if (body.isEmpty()) throw new InvalidInputException("No reviews given");
+        body.forEach(r -> {
+            if (r.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + r.getProductId());
+        });
+
+        // The multi-row inserts run in one transaction. If a review already exists it is rolled back and the reviews
+        // are inserted one at a time, skipping the existing ones, like saveAll() in the JPA option
+        List<ReviewEntity> entities = mapper.apiListToEntityList(body);
+        return repository.insertAll(entities)
+                .as(transactionalOperator::transactional)
+                .doOnNext(rows -> LOG.debug("createReviews: created {} review entities for productId: {}", rows, body.get(0).getProductId()))
+                .thenReturn(entities)
+                .onErrorResume(DataIntegrityViolationException.class, div -> insertSkippingDuplicates(entities))
+                .doOnNext(created -> body.stream().map(Review::getProductId).distinct().forEach(cache::invalidate))
+                .flatMapIterable(mapper::entityListToApiList);
+    }
+
+    private Mono<List<ReviewEntity>> insertSkippingDuplicates(List<ReviewEntity> entities) {
+        return Flux.fromIterable(entities)
+                .concatMap(entity -> repository.insert(entity)
+                        .thenReturn(entity)
+                        .onErrorResume(DataIntegrityViolationException.class, e -> {
+                            LOG.info("createReviews: skips the already existing review {}/{}", entity.getProductId(), entity.getReviewId());
+                            return Mono.empty();
+                        }))
+                .collectList();
+    }
+
+    @Override
+    public Mono<Void> deleteReviews(int productId) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+
+        LOG.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
+
+        return repository.deleteByProductId(productId)
+                .doOnNext(rows -> cache.invalidate(productId))
+                .doOnNext(rows -> LOG.debug("deleteReviews: deleted {} reviews for the product with productId: {}", rows, productId))
+                .then();
+    }
+
+    private Flux<Review> withDeadline(Flux<ReviewEntity> entities) {
+        String serviceAddress = serviceUtil.getServiceAddress();
+        return RequestDeadline.check()
+                .thenMany(entities)
+                .map(entity -> {
+                    Review review = mapper.entityToApi(entity);
+                    review.setServiceAddress(serviceAddress);
+                    return review;
+                });
+    }
+}
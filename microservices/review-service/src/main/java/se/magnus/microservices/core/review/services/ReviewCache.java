@@ -0,0 +1,31 @@
+package se.magnus.microservices.core.review.services;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.magnus.api.core.review.Review;
+import se.magnus.util.messaging.InvalidatedCache;
+
+import java.time.Duration;
+import java.util.List;
+
+// The reviews of a product, keyed by productId. Bounded by the total number of cached reviews rather than by
+// the number of products, since a hot product can have thousands of reviews
+@Component
+public class ReviewCache extends InvalidatedCache<Integer, List<Review>> {
+
+    @Autowired
+    public ReviewCache(
+            MeterRegistry meterRegistry,
+            @Value("${app.review-cache.enabled:true}") boolean enabled,
+            @Value("${app.review-cache.maximum-reviews:100000}") long maximumReviews,
+            @Value("${app.review-cache.expire-after-write:5m}") Duration expireAfterWrite) {
+        super("reviewCache", Caffeine.newBuilder()
+                        .maximumWeight(maximumReviews)
+                        .weigher((Integer productId, List<Review> reviews) -> Math.max(1, reviews.size()))
+                        .expireAfterWrite(expireAfterWrite),
+                meterRegistry, enabled);
+    }
+}
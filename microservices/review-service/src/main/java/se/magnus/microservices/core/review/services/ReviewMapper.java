@@ -19,4 +19,6 @@ public interface ReviewMapper {
 
     List<Review> entityListToApiList(List<ReviewEntity> entityList);
 
+    List<ReviewEntity> apiListToEntityList(List<Review> apiList);
+
 }
@@ -3,7 +3,10 @@ package se.magnus.microservices.core.review.services;
 import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -13,27 +16,39 @@ import se.magnus.api.core.review.ReviewService;
 import se.magnus.microservices.core.review.persistent.ReviewEntity;
 import se.magnus.microservices.core.review.persistent.ReviewRepository;
 import se.magnus.util.exceptions.InvalidInputException;
+import se.magnus.util.http.RequestDeadline;
 import se.magnus.util.http.ServiceUtil;
+import se.magnus.util.reactor.ReactiveInstrumentation;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Supplier;
 
-import static java.util.logging.Level.FINE;
-
 @RestController
+@ConditionalOnProperty(name = "app.persistence", havingValue = "jpa", matchIfMissing = true)
 public class ReviewServiceImpl implements ReviewService {
     private static final Logger LOG = LoggerFactory.getLogger(ReviewServiceImpl.class);
     private final ServiceUtil serviceUtil;
     private final ReviewRepository repository;
     private final ReviewMapper mapper;
+    private final ReviewCache cache;
 
     private final Scheduler jdbcScheduler;
+    private final ReactiveInstrumentation instrumentation;
+    private final int maxPageSize;
+    private final int maxBatchSize;
 
-    public ReviewServiceImpl(ServiceUtil serviceUtil, ReviewRepository repository, ReviewMapper mapper, Scheduler jdbcScheduler) {
+    public ReviewServiceImpl(ServiceUtil serviceUtil, ReviewRepository repository, ReviewMapper mapper, ReviewCache cache, Scheduler jdbcScheduler,
+                             ReactiveInstrumentation instrumentation, @Value("${app.max-page-size:100}") int maxPageSize,
+                             @Value("${app.max-batch-size:200}") int maxBatchSize) {
         this.serviceUtil = serviceUtil;
         this.repository = repository;
         this.mapper = mapper;
+        this.cache = cache;
         this.jdbcScheduler = jdbcScheduler;
+        this.instrumentation = instrumentation;
+        this.maxPageSize = maxPageSize;
+        this.maxBatchSize = maxBatchSize;
     }
 
 
@@ -43,7 +58,40 @@ public class ReviewServiceImpl implements ReviewService {
 
         LOG.info("Will get reviews for product with id={}", productId);
 
-        return asyncFlux(() -> Flux.fromIterable(getByProductId(productId))).log(null, FINE);
+        // A cache hit is served on the calling thread, only misses go to the jdbcScheduler
+        List<Review> cached = cache.get(productId);
+        if (cached != null) {
+            return RequestDeadline.check().thenMany(Flux.fromIterable(cached)).transform(instrumentation.flux("review.get"));
+        }
+
+        return asyncFlux(() -> Flux.fromIterable(getByProductId(productId))).transform(instrumentation.flux("review.get"));
+    }
+
+    @Override
+    public Flux<Review> getReviews(List<Integer> productIds) {
+        if (productIds.isEmpty() || productIds.size() > maxBatchSize) {
+            throw new InvalidInputException("Invalid number of productIds: " + productIds.size() + ", expected 1 to " + maxBatchSize);
+        }
+        productIds.forEach(productId -> {
+            if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        });
+
+        LOG.info("Will get reviews for {} products", productIds.size());
+
+        return asyncFlux(() -> Flux.fromIterable(getByProductIds(productIds))).transform(instrumentation.flux("review.get-batch"));
+    }
+
+    @Override
+    public Flux<Review> getReviewsPage(int productId, int afterReviewId, int pageSize) {
+        if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
+        if (afterReviewId < 0) throw new InvalidInputException("Invalid afterReviewId: " + afterReviewId);
+        if (pageSize < 1 || pageSize > maxPageSize) {
+            throw new InvalidInputException("Invalid pageSize: " + pageSize + ", expected 1 to " + maxPageSize);
+        }
+
+        LOG.info("Will get up to {} reviews after reviewId={} for product with id={}", pageSize, afterReviewId, productId);
+
+        return asyncFlux(() -> Flux.fromIterable(getPageByProductId(productId, afterReviewId, pageSize))).transform(instrumentation.flux("review.get-page"));
     }
 
     @Override
@@ -54,32 +102,90 @@ public class ReviewServiceImpl implements ReviewService {
                 .subscribeOn(jdbcScheduler);
     }
 
+    @Override
+    public Flux<Review> createReviews(List<Review> body) {
+        if (body.isEmpty()) throw new InvalidInputException("No reviews given");
+        body.forEach(r -> {
+            if (r.getProductId() < 1) throw new InvalidInputException("Invalid productId: " + r.getProductId());
+        });
+
+        return Mono.fromCallable(() -> internalCreateReviews(body))
+                .subscribeOn(jdbcScheduler)
+                .flatMapMany(Flux::fromIterable);
+    }
+
     protected List<Review> getByProductId(int productId) {
-        List<ReviewEntity> entryList = repository.findByProductId(productId);
-        List<Review> reviews = mapper.entityListToApiList(entryList);
+        long cacheGeneration = cache.generation(productId);
+        List<Review> reviews = repository.findReviewsByProductId(productId);
         reviews.forEach(r -> r.setServiceAddress(serviceUtil.getServiceAddress()));
+        cache.put(productId, List.copyOf(reviews), cacheGeneration);
 
         LOG.debug("getReviews: response size: {}", reviews.size());
 
         return reviews;
     }
 
+    protected List<Review> getByProductIds(List<Integer> productIds) {
+        List<Review> reviews = repository.findReviewsByProductIdIn(productIds);
+        reviews.forEach(r -> r.setServiceAddress(serviceUtil.getServiceAddress()));
+
+        LOG.debug("getReviews: response size: {}", reviews.size());
+
+        return reviews;
+    }
+
+    protected List<Review> getPageByProductId(int productId, int afterReviewId, int pageSize) {
+        List<Review> reviews = repository.findReviewsPageByProductId(productId, afterReviewId, PageRequest.of(0, pageSize));
+        reviews.forEach(r -> r.setServiceAddress(serviceUtil.getServiceAddress()));
+
+        LOG.debug("getReviewsPage: response size: {}", reviews.size());
+
+        return reviews;
+    }
+
     private <T> Flux<T> asyncFlux(Supplier<Publisher<T>> publisherSupplier) {
-        return Flux.defer(publisherSupplier).subscribeOn(jdbcScheduler);
+        return RequestDeadline.check()
+                .thenMany(Flux.deferContextual(context -> {
+                    RequestDeadline.checkNotExpired(context);
+                    return publisherSupplier.get();
+                }).subscribeOn(jdbcScheduler));
     }
 
     public Review internalCreateReview(Review body) {
         try {
             ReviewEntity entity = mapper.apiToEntity(body);
             ReviewEntity newEntity = repository.save(entity);
+            cache.invalidate(body.getProductId());
 
-            LOG.debug("createView: created a review entity: {}/{}", body.getProductId(), body.getReviewId());
+            LOG.debug("createReview: created a review entity: {}/{}", body.getProductId(), body.getReviewId());
             return mapper.entityToApi(newEntity);
         } catch (DataIntegrityViolationException div) {
             throw new InvalidInputException("Duplicate key, product Id: " + body.getProductId() + ", Review Id: " + body.getReviewId());
         }
     }
 
+    public List<Review> internalCreateReviews(List<Review> body) {
+        List<ReviewEntity> newEntities = new ArrayList<>();
+        try {
+            repository.saveAll(mapper.apiListToEntityList(body)).forEach(newEntities::add);
+        } catch (DataIntegrityViolationException div) {
+            // saveAll() is rolled back as a whole, so one review that already exists, e.g. in a redelivered batch,
+            // would fail the batch on every delivery. Save one at a time instead and skip the existing ones
+            newEntities.clear();
+            for (Review review : body) {
+                try {
+                    newEntities.add(repository.save(mapper.apiToEntity(review)));
+                } catch (DataIntegrityViolationException e) {
+                    LOG.info("createReviews: skips the already existing review {}/{}", review.getProductId(), review.getReviewId());
+                }
+            }
+        }
+        body.stream().map(Review::getProductId).distinct().forEach(cache::invalidate);
+
+        LOG.debug("createReviews: created {} review entities for productId: {}", newEntities.size(), body.get(0).getProductId());
+        return mapper.entityListToApiList(newEntities);
+    }
+
     @Override
     public Mono<Void> deleteReviews(int productId) {
         if (productId < 1) throw new InvalidInputException("Invalid productId: " + productId);
@@ -90,6 +196,8 @@ public class ReviewServiceImpl implements ReviewService {
     public void internalDeleteReviews(int productId) {
         LOG.debug("deleteReviews: tries to delete reviews for the product with productId: {}", productId);
 
-        repository.deleteAll(repository.findByProductId(productId));
+        int deleted = repository.deleteByProductId(productId);
+        cache.invalidate(productId);
+        LOG.debug("deleteReviews: deleted {} reviews for the product with productId: {}", deleted, productId);
     }
 }
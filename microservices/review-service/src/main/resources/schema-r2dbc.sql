@@ -0,0 +1,12 @@
+-- Schema for the R2DBC persistence option, which cannot rely on Hibernate to create the table.
+-- Same table as ReviewEntity, whose IDENTITY id is the auto increment id below
+CREATE TABLE IF NOT EXISTS reviews (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    version INT NOT NULL,
+    product_id INT NOT NULL,
+    review_id INT NOT NULL,
+    author VARCHAR(255),
+    subject VARCHAR(255),
+    content VARCHAR(255),
+    CONSTRAINT review_unique_idx UNIQUE (product_id, review_id)
+);
@@ -7,12 +7,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import se.magnus.api.core.review.Review;
 import se.magnus.microservices.core.review.persistent.ReviewEntity;
 import se.magnus.microservices.core.review.persistent.ReviewRepository;
 
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -58,6 +61,18 @@ class PersistenceTests {
         assertFalse(repository.existsById(savedEntity.getId()));
     }
 
+    @Test
+    public void deleteByProductIdWithLargeFanOut() {
+        repository.saveAll(IntStream.rangeClosed(1, 2000).mapToObj(reviewId -> new ReviewEntity(3, reviewId, "a", "s", "c")).toList());
+
+        assertEquals(2000, repository.deleteByProductId(3));
+        assertEquals(0, repository.findByProductId(3).size());
+        assertEquals(0, repository.deleteByProductId(3));
+
+        // Reviews of other products are left alone
+        assertTrue(repository.existsById(savedEntity.getId()));
+    }
+
     @Test
     public void getByProductId() {
         List<ReviewEntity> entryList = repository.findByProductId(savedEntity.getProductId());
@@ -66,6 +81,44 @@ class PersistenceTests {
         assertEqualsReview(savedEntity, entryList.get(0));
     }
 
+    @Test
+    public void getByProductIds() {
+        repository.save(new ReviewEntity(2, 1, "a", "s", "c"));
+        repository.save(new ReviewEntity(3, 1, "a", "s", "c"));
+
+        List<Review> entityList = repository.findReviewsByProductIdIn(List.of(savedEntity.getProductId(), 2));
+        assertEquals(2, entityList.size());
+    }
+
+    @Test
+    public void getPageByProductId() {
+        for (int reviewId = 3; reviewId <= 6; reviewId++) {
+            repository.save(new ReviewEntity(1, reviewId, "a", "s", "c"));
+        }
+
+        List<Review> firstPage = repository.findReviewsPageByProductId(1, 0, PageRequest.of(0, 2));
+        assertEquals(List.of(2, 3), firstPage.stream().map(Review::getReviewId).toList());
+
+        List<Review> lastPage = repository.findReviewsPageByProductId(1, 5, PageRequest.of(0, 2));
+        assertEquals(List.of(6), lastPage.stream().map(Review::getReviewId).toList());
+    }
+
+    @Test
+    public void getReviewProjections() {
+        repository.save(new ReviewEntity(1, 3, "a", "s", "c"));
+        repository.save(new ReviewEntity(2, 1, "a", "s", "c"));
+
+        List<Review> reviews = repository.findReviewsByProductId(1);
+        assertEquals(2, reviews.size());
+        assertEquals(savedEntity.getAuthor(), reviews.get(0).getAuthor());
+        assertNull(reviews.get(0).getServiceAddress());
+
+        assertEquals(3, repository.findReviewsByProductIdIn(List.of(1, 2)).size());
+
+        List<Review> page = repository.findReviewsPageByProductId(1, 2, PageRequest.of(0, 2));
+        assertEquals(List.of(3), page.stream().map(Review::getReviewId).toList());
+    }
+
     @Test
     public void duplicateError() {
         assertThrows(DataIntegrityViolationException.class, () -> {
@@ -0,0 +1,121 @@
+package se.magnus.microservices.core.review;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.test.StepVerifier;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.core.review.ReviewService;
+import se.magnus.microservices.core.review.persistent.ReviewR2dbcRepository;
+import se.magnus.microservices.core.review.services.R2dbcReviewServiceImpl;
+import se.magnus.microservices.core.review.services.ReviewCache;
+import se.magnus.util.exceptions.InvalidInputException;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+@SpringBootTest(properties = {
+        "eureka.client.enabled=false",
+        "spring.r2dbc.url=r2dbc:h2:mem:///review-db;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.username=sa",
+        "spring.r2dbc.password="})
+@ActiveProfiles("r2dbc")
+class R2dbcReviewServiceTests {
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private ReviewR2dbcRepository repository;
+
+    @Autowired
+    private ReviewCache cache;
+
+    @BeforeEach
+    void setupDb() {
+        repository.deleteAll().block();
+        cache.invalidateAll();
+    }
+
+    @Test
+    void usesTheR2dbcImplementation() {
+        assertInstanceOf(R2dbcReviewServiceImpl.class, reviewService);
+    }
+
+    @Test
+    void createAndGetReviews() {
+        reviewService.createReview(new Review(1, 1, "a", "s", "c", null)).block();
+        reviewService.createReview(new Review(1, 2, "a", "s", null, null)).block();
+        reviewService.createReview(new Review(2, 1, "a", "s", "c", null)).block();
+
+        StepVerifier.create(reviewService.getReviews(1))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        StepVerifier.create(reviewService.getReviews(List.of(1, 2)))
+                .expectNextCount(3)
+                .verifyComplete();
+    }
+
+    @Test
+    void cachedReviewsAreInvalidatedByWrites() {
+        reviewService.createReview(new Review(1, 1, "a", "s", "c", null)).block();
+        reviewService.getReviews(1).blockLast();
+        assertEquals(1, cache.get(1).size());
+
+        reviewService.createReview(new Review(1, 2, "a", "s", "c", null)).block();
+        StepVerifier.create(reviewService.getReviews(1))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        reviewService.deleteReviews(1).block();
+        StepVerifier.create(reviewService.getReviews(1))
+                .verifyComplete();
+    }
+
+    @Test
+    void getReviewsPage() {
+        reviewService.createReviews(IntStream.rangeClosed(1, 5).mapToObj(reviewId -> new Review(1, reviewId, "a", "s", "c", null)).toList()).blockLast();
+
+        StepVerifier.create(reviewService.getReviewsPage(1, 2, 2).map(Review::getReviewId))
+                .expectNext(3, 4)
+                .verifyComplete();
+    }
+
+    @Test
+    void duplicateError() {
+        reviewService.createReview(new Review(1, 1, "a", "s", "c", null)).block();
+
+        StepVerifier.create(reviewService.createReview(new Review(1, 1, "a", "s", "c", null)))
+                .expectErrorMatches(e -> e instanceof InvalidInputException && e.getMessage().equals("Duplicate key, product Id: 1, Review Id: 1"))
+                .verify();
+    }
+
+    @Test
+    void createReviewsInBatchSkipsExistingOnes() {
+        reviewService.createReview(new Review(1, 120, "a", "s", "c", null)).block();
+
+        // Spans several multi-row inserts, the duplicate is in the last one
+        List<Review> reviews = IntStream.rangeClosed(1, 120).mapToObj(reviewId -> new Review(1, reviewId, "a", "s", "c", null)).toList();
+
+        StepVerifier.create(reviewService.createReviews(reviews).count())
+                .expectNext(119L)
+                .verifyComplete();
+        assertEquals(120, repository.count().block());
+    }
+
+    @Test
+    void deleteReviews() {
+        reviewService.createReviews(List.of(new Review(1, 1, "a", "s", "c", null), new Review(1, 2, "a", "s", "c", null))).blockLast();
+        reviewService.createReview(new Review(2, 1, "a", "s", "c", null)).block();
+
+        reviewService.deleteReviews(1).block();
+        reviewService.deleteReviews(1).block();
+
+        assertEquals(1, repository.count().block());
+    }
+}
@@ -9,12 +9,18 @@ import org.springframework.http.HttpStatus;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import se.magnus.api.core.review.Review;
 import se.magnus.api.event.Event;
+import se.magnus.microservices.core.review.persistent.ReviewEntity;
 import se.magnus.microservices.core.review.persistent.ReviewRepository;
+import se.magnus.microservices.core.review.services.ReviewCache;
 import se.magnus.util.exceptions.InvalidInputException;
 
+import java.util.List;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 import static org.springframework.http.HttpStatus.*;
@@ -29,13 +35,25 @@ class ReviewApplicationTests {
     @Autowired
     private ReviewRepository repository;
 
+    @Autowired
+    private ReviewCache cache;
+
     @Autowired
     @Qualifier("messageProcessor")
     private Consumer<Event<Integer, Review>> messageProcessor;
 
+    @Autowired
+    @Qualifier("batchMessageProcessor")
+    private Consumer<List<Event<Integer, Review>>> batchMessageProcessor;
+
+    @Autowired
+    @Qualifier("reviewCacheInvalidator")
+    private Consumer<Event<Integer, Object>> reviewCacheInvalidator;
+
     @BeforeEach
     public void setupDb() {
         repository.deleteAll();
+        cache.invalidateAll();
     }
 
     @Test
@@ -56,6 +74,81 @@ class ReviewApplicationTests {
                 .jsonPath("$[2].reviewId").isEqualTo(3);
     }
 
+    @Test
+    public void cachedReviewsAreInvalidatedByEvents() {
+        sendCreateReviewEvent(1, 1);
+
+        getAndVerifyReviewsByProductId(1, OK).jsonPath("$.length()").isEqualTo(1);
+        assertEquals(1, cache.get(1).size());
+
+        sendCreateReviewEvent(1, 2);
+        assertNull(cache.get(1));
+        getAndVerifyReviewsByProductId(1, OK).jsonPath("$.length()").isEqualTo(2);
+
+        sendDeleteReviewEvent(1);
+        getAndVerifyReviewsByProductId(1, OK).jsonPath("$.length()").isEqualTo(0);
+    }
+
+    @Test
+    public void cachedReviewsAreInvalidatedByAppliedEvents() {
+        sendCreateReviewEvent(1, 1);
+        getAndVerifyReviewsByProductId(1, OK).jsonPath("$.length()").isEqualTo(1);
+
+        // Reviews written by the instance that owns the product's partition, announced on reviews-applied
+        repository.save(new ReviewEntity(1, 2, "a", "s", "c"));
+        getAndVerifyReviewsByProductId(1, OK).jsonPath("$.length()").isEqualTo(1);
+
+        reviewCacheInvalidator.accept(new Event(Event.Type.CREATE, 1, null));
+        assertNull(cache.get(1));
+        getAndVerifyReviewsByProductId(1, OK).jsonPath("$.length()").isEqualTo(2);
+    }
+
+    @Test
+    public void getReviewsPageForManyProductsIsRejected() {
+        client.get()
+                .uri("/review?productIds=1,2&pageSize=2")
+                .exchange()
+                .expectStatus().isEqualTo(BAD_REQUEST);
+    }
+
+    @Test
+    public void getTooManyReviewsByProductIds() {
+        getAndVerifyReviewsByProductId("?productIds=" + IntStream.rangeClosed(1, 201).mapToObj(String::valueOf).collect(Collectors.joining(",")), UNPROCESSABLE_ENTITY)
+                .jsonPath("$.message").isEqualTo("Invalid number of productIds: 201, expected 1 to 200");
+    }
+
+    @Test
+    public void getReviewsByProductIds() {
+        sendCreateReviewEvent(1, 1);
+        sendCreateReviewEvent(1, 2);
+        sendCreateReviewEvent(2, 1);
+        sendCreateReviewEvent(3, 1);
+
+        getAndVerifyReviewsByProductId("?productIds=1,2", OK)
+                .jsonPath("$.length()").isEqualTo(3);
+    }
+
+    @Test
+    public void getReviewsPage() {
+        sendCreateReviewEvent(1, 1);
+        sendCreateReviewEvent(1, 2);
+        sendCreateReviewEvent(1, 3);
+
+        getAndVerifyReviewsByProductId("?productId=1&pageSize=2", OK)
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].reviewId").isEqualTo(2);
+
+        getAndVerifyReviewsByProductId("?productId=1&afterReviewId=2&pageSize=2", OK)
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].reviewId").isEqualTo(3);
+    }
+
+    @Test
+    public void getReviewsPageInvalidPageSize() {
+        getAndVerifyReviewsByProductId("?productId=1&pageSize=0", UNPROCESSABLE_ENTITY)
+                .jsonPath("$.path").isEqualTo("/review")
+                .jsonPath("$.message").isEqualTo("Invalid pageSize: 0, expected 1 to 100");
+    }
 
     @Test
     public void getReviewsMissingParameter() {
@@ -123,6 +216,53 @@ class ReviewApplicationTests {
         sendDeleteReviewEvent(productId);
     }
 
+    @Test
+    public void createReviewsInBatch() {
+        List<Review> reviews = IntStream.rangeClosed(1, 120)
+                .mapToObj(reviewId -> new Review(1, reviewId, "Author 1", "S", "C", "SA"))
+                .toList();
+
+        messageProcessor.accept(Event.createBatch(1, reviews));
+
+        assertEquals(120, repository.findByProductId(1).size());
+    }
+
+    @Test
+    public void createReviewsInBatchSkipsExistingOnes() {
+        sendCreateReviewEvent(1, 2);
+
+        List<Review> reviews = List.of(new Review(1, 1, "Author 1", "S", "C", "SA"), new Review(1, 2, "Author 1", "S", "C", "SA"));
+        messageProcessor.accept(Event.createBatch(1, reviews));
+
+        assertEquals(2, repository.findByProductId(1).size());
+    }
+
+    @Test
+    public void redeliveredBatchIsDropped() {
+        List<Review> reviews = List.of(new Review(1, 1, "Author 1", "S", "C", "SA"), new Review(1, 2, "Author 1", "S", "C", "SA"));
+        Event<Integer, Review> event = Event.createBatch(1, reviews);
+
+        messageProcessor.accept(event);
+        messageProcessor.accept(event);
+
+        assertEquals(2, repository.findByProductId(1).size());
+    }
+
+    @Test
+    public void processBatchWithSupersededEvents() {
+        Review review = new Review(1, 1, "Author 1", "S", "C", "SA");
+
+        // Repeated DELETEs collapse into the last one, which also supersedes the CREATE before it
+        batchMessageProcessor.accept(List.of(
+                new Event(Event.Type.DELETE, 1, null),
+                new Event(Event.Type.CREATE, 1, review),
+                new Event(Event.Type.DELETE, 1, null),
+                new Event(Event.Type.CREATE, 2, new Review(2, 1, "Author 2", "S", "C", "SA"))));
+
+        assertEquals(0, repository.findByProductId(1).size());
+        assertEquals(1, repository.findByProductId(2).size());
+    }
+
     private void sendCreateReviewEvent(int productId, int reviewId) {
         Review review = new Review(productId, reviewId, "Author " + productId, "S", "C", "SA");
         Event<Integer, Review> event = new Event(Event.Type.CREATE, productId, review);
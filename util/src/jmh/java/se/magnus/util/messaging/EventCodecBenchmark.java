@@ -0,0 +1,86 @@
+package se.magnus.util.messaging;
+
+import com.fasterxml.jackson.databind.JavaType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.util.MimeTypeUtils;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Compares JSON and CBOR encoding of review events, both for a single review and for a batch event.
+// The payload sizes are checked by CborMessageConverterTest. Run with: ./gradlew :util:jmh
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EventCodecBenchmark {
+    private static final Type EVENT_TYPE = new ParameterizedTypeReference<Event<Integer, Review>>() {}.getType();
+
+    @Param({"1", "100"})
+    private int reviews;
+
+    private MappingJackson2MessageConverter jsonConverter;
+    private CborMessageConverter cborConverter;
+    private Event<Integer, Review> event;
+    private MessageHeaders jsonHeaders;
+    private MessageHeaders cborHeaders;
+    private Message<?> jsonMessage;
+    private Message<?> cborMessage;
+    private JavaType jsonEventType;
+
+    @Setup
+    public void setUp() {
+        jsonConverter = new MappingJackson2MessageConverter();
+        jsonConverter.setSerializedPayloadClass(byte[].class);
+        jsonConverter.getObjectMapper().findAndRegisterModules();
+        cborConverter = new CborMessageConverter();
+        jsonEventType = jsonConverter.getObjectMapper().constructType(EVENT_TYPE);
+
+        List<Review> batch = IntStream.rangeClosed(1, reviews)
+                .mapToObj(reviewId -> new Review(1, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content of review " + reviewId, null))
+                .toList();
+        event = reviews == 1 ? new Event<>(Event.Type.CREATE, 1, batch.get(0)) : Event.createBatch(1, batch);
+
+        jsonHeaders = new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON));
+        cborHeaders = new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, CborMessageConverter.APPLICATION_CBOR));
+        jsonMessage = jsonConverter.toMessage(event, jsonHeaders);
+        cborMessage = cborConverter.toMessage(event, cborHeaders);
+    }
+
+    @Benchmark
+    public Message<?> encodeJson() {
+        return jsonConverter.toMessage(event, jsonHeaders);
+    }
+
+    @Benchmark
+    public Message<?> encodeCbor() {
+        return cborConverter.toMessage(event, cborHeaders);
+    }
+
+    // MappingJackson2MessageConverter ignores a plain Type hint, so the JSON side reads with the full generic type directly
+    @Benchmark
+    public Object decodeJson() throws IOException {
+        return jsonConverter.getObjectMapper().readValue((byte[]) jsonMessage.getPayload(), jsonEventType);
+    }
+
+    @Benchmark
+    public Object decodeCbor() {
+        return cborConverter.fromMessage(cborMessage, Event.class, EVENT_TYPE);
+    }
+}
@@ -0,0 +1,67 @@
+package se.magnus.util.reactor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Compares the per-subscription cost of .log() with ReactiveInstrumentation on a chain shaped like
+// the service read paths. .log() writes through the default logback console appender, the same
+// setup the services run with. Run with: ./gradlew :util:jmh
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ReactiveInstrumentationBenchmark {
+
+    @Param({"1", "20"})
+    private int elements;
+
+    private Flux<Integer> source;
+    private ReactiveInstrumentation sampledInstrumentation;
+    private ReactiveInstrumentation fullInstrumentation;
+
+    @Setup
+    public void setUp() {
+        source = Flux.range(0, elements).map(i -> i * 2);
+        sampledInstrumentation = createInstrumentation(0.1);
+        fullInstrumentation = createInstrumentation(1.0);
+    }
+
+    @Benchmark
+    public Integer baseline() {
+        return source.blockLast();
+    }
+
+    @Benchmark
+    public Integer withLog() {
+        return source.log().blockLast();
+    }
+
+    @Benchmark
+    public Integer withSampledInstrumentation() {
+        return source.transform(sampledInstrumentation.flux("benchmark")).blockLast();
+    }
+
+    @Benchmark
+    public Integer withFullInstrumentation() {
+        return source.transform(fullInstrumentation.flux("benchmark")).blockLast();
+    }
+
+    private static ReactiveInstrumentation createInstrumentation(double sampleRate) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Map.of("app.instrumentation.sample-rate", sampleRate)));
+        return new ReactiveInstrumentation(new SimpleMeterRegistry(), environment);
+    }
+}
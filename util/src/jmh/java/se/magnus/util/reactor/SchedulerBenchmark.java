@@ -0,0 +1,68 @@
+package se.magnus.util.reactor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Runs a burst of blocking calls, each taking about 1 ms like a JDBC round trip, on the schedulers the services
+// use today and on virtual thread schedulers. "fixed" is the review-service jdbcScheduler, "bounded-elastic" the
+// product-composite publish-pool, with a queue as large as the burst since the real queue of 100 rejects it.
+// The virtual thread variants are limited to the same 10 concurrent calls, and to 100 for a larger connection pool.
+// The gc profiler reports the heap allocated per burst. It includes the stacks of virtual threads, which live on the heap,
+// but not the native stacks of platform threads, about 1 MB reserved per pool thread. Run with: ./gradlew :util:jmh
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SchedulerBenchmark {
+    private static final long BLOCKING_CALL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Param({"fixed-10", "bounded-elastic-10", "virtual-10", "virtual-100"})
+    private String scheduler;
+
+    @Param({"1000"})
+    private int burst;
+
+    private Scheduler workerScheduler;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workerScheduler = switch (scheduler) {
+            case "fixed-10" -> Schedulers.fromExecutor(Executors.newFixedThreadPool(10));
+            case "bounded-elastic-10" -> Schedulers.newBoundedElastic(10, burst, "publish-pool");
+            case "virtual-10" -> VirtualThreadSchedulers.newConcurrencyLimited("virtual", 10);
+            case "virtual-100" -> VirtualThreadSchedulers.newConcurrencyLimited("virtual", 100);
+            default -> throw new IllegalArgumentException("Unknown scheduler: " + scheduler);
+        };
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workerScheduler.dispose();
+    }
+
+    @Benchmark
+    public Long blockingCalls() {
+        return Flux.range(0, burst)
+                .flatMap(i -> Mono.fromCallable(() -> {
+                    LockSupport.parkNanos(BLOCKING_CALL_NANOS);
+                    return i;
+                }).subscribeOn(workerScheduler), burst)
+                .count()
+                .block();
+    }
+}
@@ -0,0 +1,62 @@
+package se.magnus.util.http;
+
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+import se.magnus.util.exceptions.DeadlineExceededException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+// The deadline travels between services as the remaining time in milliseconds, so it is not affected by clock skew
+public final class RequestDeadline {
+    public static final String HEADER = "X-Request-Timeout";
+
+    private static final String CONTEXT_KEY = RequestDeadline.class.getName();
+
+    private RequestDeadline() {
+    }
+
+    public static Optional<Instant> fromContext(ContextView context) {
+        return context.getOrEmpty(CONTEXT_KEY);
+    }
+
+    public static Context putInContext(Context context, Instant deadline) {
+        return context.put(CONTEXT_KEY, deadline);
+    }
+
+    public static Optional<Duration> remaining(ContextView context) {
+        return fromContext(context).map(deadline -> Duration.between(Instant.now(), deadline));
+    }
+
+    public static Mono<Void> check() {
+        return Mono.deferContextual(context -> {
+            checkNotExpired(context);
+            return Mono.empty();
+        });
+    }
+
+    public static void checkNotExpired(ContextView context) {
+        fromContext(context).ifPresent(deadline -> {
+            if (!Instant.now().isBefore(deadline)) {
+                throw new DeadlineExceededException("Request deadline exceeded " + Duration.between(deadline, Instant.now()).toMillis() + " ms ago, abandons the request");
+            }
+        });
+    }
+
+    public static String toHeaderValue(Instant deadline) {
+        return String.valueOf(Math.max(0, Duration.between(Instant.now(), deadline).toMillis()));
+    }
+
+    public static Optional<Instant> fromHeaderValue(String value) {
+        if (value == null || value.isBlank()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Instant.now().plusMillis(Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package se.magnus.util.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
+
+@Component
+public class RequestDeadlineWebFilter implements WebFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(RequestDeadlineWebFilter.class);
+
+    private final Duration defaultBudget;
+
+    @Autowired
+    public RequestDeadlineWebFilter(@Value("${app.request-deadline.default-budget:0s}") Duration defaultBudget) {
+        this.defaultBudget = defaultBudget;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        Optional<Instant> deadline = RequestDeadline.fromHeaderValue(exchange.getRequest().getHeaders().getFirst(RequestDeadline.HEADER));
+        if (deadline.isEmpty() && !defaultBudget.isZero()) {
+            deadline = Optional.of(Instant.now().plus(defaultBudget));
+        }
+
+        if (deadline.isEmpty()) {
+            return chain.filter(exchange);
+        }
+
+        Instant requestDeadline = deadline.get();
+        if (!Instant.now().isBefore(requestDeadline)) {
+            LOG.debug("Request deadline already exceeded for path: {}, rejects the request", exchange.getRequest().getPath());
+            exchange.getResponse().setStatusCode(GATEWAY_TIMEOUT);
+            return exchange.getResponse().setComplete();
+        }
+
+        return chain.filter(exchange).contextWrite(context -> RequestDeadline.putInContext(context, requestDeadline));
+    }
+}
@@ -0,0 +1,37 @@
+package se.magnus.util.messaging;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import se.magnus.api.event.Event;
+
+// Announces that the instance owning a key has written an event to its database. The command events on e.g. the
+// products destination arrive at every cache before the owner has applied them, so a read in between would cache
+// the old state again. Caches instead invalidate on the applied events, sent to the destination bound to
+// appliedEvents-out-0 and consumed by each instance without a group
+@Component
+@Slf4j
+public class AppliedEventPublisher {
+    public static final String BINDING_NAME = "appliedEvents-out-0";
+
+    private final StreamBridge streamBridge;
+
+    public AppliedEventPublisher(StreamBridge streamBridge) {
+        this.streamBridge = streamBridge;
+    }
+
+    // The event is already applied, so a failed announcement is only logged, the caches expire the entry in the end
+    public Mono<Void> published(Event<Integer, ?> appliedEvent) {
+        return Mono.<Void>fromRunnable(() -> {
+                    log.debug("Announces an applied {} event for key: {}", appliedEvent.getEventType(), appliedEvent.getKey());
+                    streamBridge.send(BINDING_NAME, new Event<>(appliedEvent.getEventType(), appliedEvent.getKey(), null));
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(error -> {
+                    log.warn("Failed to announce an applied {} event for key: {}: {}", appliedEvent.getEventType(), appliedEvent.getKey(), error.toString());
+                    return Mono.empty();
+                });
+    }
+}
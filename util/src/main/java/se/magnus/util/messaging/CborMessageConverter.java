@@ -0,0 +1,73 @@
+package se.magnus.util.messaging;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.core.MethodParameter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+// Encodes message payloads as CBOR for bindings configured with contentType: application/cbor.
+// Decoding is selected by the contentType header of each message, so consumers keep accepting
+// JSON messages from producers that have not been switched over yet
+@Component
+public class CborMessageConverter extends AbstractMessageConverter {
+    public static final MimeType APPLICATION_CBOR = MimeType.valueOf("application/cbor");
+
+    private final ObjectMapper mapper;
+
+    public CborMessageConverter() {
+        super(APPLICATION_CBOR);
+        // Messages without a contentType header are left to the JSON converter
+        setStrictContentTypeMatch(true);
+        this.mapper = CBORMapper.builder()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .findAndAddModules()
+                .build();
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return true;
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        if (!(message.getPayload() instanceof byte[] payload)) {
+            return null;
+        }
+        try {
+            return mapper.readValue(payload, getJavaType(targetClass, conversionHint));
+        } catch (IOException e) {
+            throw new MessageConversionException(message, "Could not read CBOR payload: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        try {
+            return mapper.writeValueAsBytes(payload);
+        } catch (IOException e) {
+            throw new MessageConversionException("Could not write CBOR payload: " + e.getMessage(), e);
+        }
+    }
+
+    private JavaType getJavaType(Class<?> targetClass, Object conversionHint) {
+        if (conversionHint instanceof MethodParameter parameter) {
+            return mapper.constructType(GenericTypeResolver.resolveType(parameter.getNestedGenericParameterType(), parameter.getContainingClass()));
+        }
+        if (conversionHint instanceof Type type) {
+            return mapper.constructType(type);
+        }
+        return mapper.constructType(targetClass);
+    }
+}
@@ -0,0 +1,147 @@
+package se.magnus.util.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsResult.ListOffsetsResultInfo;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Publishes the number of events waiting for this consumer as messaging.consumer.lag, per partition.
+// With RabbitMQ it is the number of ready messages in the queue of the consumer's partition, with Kafka
+// it is the distance between the end offset and the committed offset of the consumer group per partition.
+// The values are refreshed in the background, so scraping the actuator does not call the broker
+@Component
+@ConditionalOnProperty(name = "app.consumer-lag.enabled", havingValue = "true")
+@Slf4j
+public class ConsumerLagMetrics implements InitializingBean, DisposableBean {
+    private static final long BROKER_TIMEOUT_SECONDS = 5;
+
+    private final ObjectProvider<ConnectionFactory> rabbitConnectionFactory;
+    private final String binder;
+    private final String destination;
+    private final String group;
+    private final Integer instanceIndex;
+    private final Duration refreshInterval;
+    private final String kafkaBrokers;
+    private final MultiGauge lag;
+    private Disposable refresher;
+    private AdminClient kafkaAdmin;
+
+    public ConsumerLagMetrics(MeterRegistry meterRegistry, Environment environment, ObjectProvider<ConnectionFactory> rabbitConnectionFactory) {
+        Binder properties = Binder.get(environment);
+        String binding = properties.bind("app.consumer-lag.binding", String.class).orElse("messageProcessor-in-0");
+        String bindingPrefix = "spring.cloud.stream.bindings." + binding;
+
+        this.rabbitConnectionFactory = rabbitConnectionFactory;
+        this.binder = properties.bind("spring.cloud.stream.default-binder", String.class).orElse("rabbit");
+        this.destination = properties.bind(bindingPrefix + ".destination", String.class).orElse(binding);
+        this.group = properties.bind(bindingPrefix + ".group", String.class).orElse(null);
+        boolean partitioned = properties.bind(bindingPrefix + ".consumer.partitioned", Boolean.class).orElse(false);
+        this.instanceIndex = partitioned ? properties.bind(bindingPrefix + ".consumer.instance-index", Integer.class).orElse(0) : null;
+        this.refreshInterval = properties.bind("app.consumer-lag.refresh-interval", Duration.class).orElse(Duration.ofSeconds(15));
+        // Like the Kafka binder, brokers without a port use the default port
+        this.kafkaBrokers = Arrays.stream(properties.bind("spring.cloud.stream.kafka.binder.brokers", String.class)
+                        .orElseGet(() -> properties.bind("spring.kafka.bootstrap-servers", String.class).orElse("localhost")).split(","))
+                .map(broker -> broker.contains(":") ? broker.trim() : broker.trim() + ":9092")
+                .collect(Collectors.joining(","));
+        this.lag = MultiGauge.builder("messaging.consumer.lag")
+                .description("Number of events waiting to be consumed")
+                .tag("binder", binder)
+                .tag("destination", destination)
+                .tag("group", String.valueOf(group))
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (group == null) {
+            log.warn("The consumer of {} has no group, consumer lag is not measured", destination);
+            return;
+        }
+        log.info("Measures consumer lag for {}/{} on {} every {}", destination, group, binder, refreshInterval);
+        refresher = Flux.interval(Duration.ZERO, refreshInterval, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .subscribe(tick -> refresh());
+    }
+
+    private void refresh() {
+        try {
+            List<MultiGauge.Row<?>> rows = binder.equals("kafka") ? kafkaLag() : rabbitLag();
+            lag.register(rows, true);
+        } catch (Exception e) {
+            log.warn("Failed to measure the consumer lag of {}/{}: {}", destination, group, e.toString());
+        }
+    }
+
+    // A partitioned RabbitMQ consumer has its own queue per partition, named <destination>.<group>-<instanceIndex>
+    private List<MultiGauge.Row<?>> rabbitLag() {
+        String queue = destination + "." + group + (instanceIndex != null ? "-" + instanceIndex : "");
+        QueueInformation queueInfo = new RabbitAdmin(rabbitConnectionFactory.getObject()).getQueueInfo(queue);
+        if (queueInfo == null) {
+            return List.of();
+        }
+        String partition = instanceIndex != null ? String.valueOf(instanceIndex) : "none";
+        return List.of(MultiGauge.Row.of(Tags.of("partition", partition), queueInfo.getMessageCount()));
+    }
+
+    private List<MultiGauge.Row<?>> kafkaLag() throws Exception {
+        if (kafkaAdmin == null) {
+            kafkaAdmin = AdminClient.create(Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaBrokers));
+        }
+        Map<TopicPartition, OffsetAndMetadata> committed = kafkaAdmin.listConsumerGroupOffsets(group)
+                .partitionsToOffsetAndMetadata()
+                .get(BROKER_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .entrySet().stream()
+                .filter(entry -> entry.getKey().topic().equals(destination) && entry.getValue() != null)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        if (committed.isEmpty()) {
+            return List.of();
+        }
+
+        Map<TopicPartition, ListOffsetsResultInfo> endOffsets = kafkaAdmin.listOffsets(committed.keySet().stream()
+                        .collect(Collectors.toMap(partition -> partition, partition -> OffsetSpec.latest())))
+                .all()
+                .get(BROKER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        return committed.entrySet().stream()
+                .<MultiGauge.Row<?>>map(entry -> MultiGauge.Row.of(
+                        Tags.of("partition", String.valueOf(entry.getKey().partition())),
+                        Math.max(0, endOffsets.get(entry.getKey()).offset() - entry.getValue().offset())))
+                .toList();
+    }
+
+    @Override
+    public void destroy() {
+        if (refresher != null) {
+            refresher.dispose();
+        }
+        if (kafkaAdmin != null) {
+            kafkaAdmin.close(Duration.ofSeconds(BROKER_TIMEOUT_SECONDS));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package se.magnus.util.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+import se.magnus.api.event.Event;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+// The binder's retry and DLQ settings do not apply to reactive functions, whose messages are acked as soon as they
+// are handed over to the Flux. Reactive consumers instead retry a failed event in place with backoff, which also
+// holds back the later events for the same key, and then send it to the destination bound to deadLetters-out-0
+@Component
+@Slf4j
+public class DeadLetterPublisher {
+    public static final String BINDING_NAME = "deadLetters-out-0";
+    public static final String EXCEPTION_MESSAGE_HEADER = "x-exception-message";
+
+    private final StreamBridge streamBridge;
+    private final Counter deadLettered;
+    private final int maxAttempts;
+    private final Duration backOffInitialInterval;
+    private final Duration backOffMaxInterval;
+
+    public DeadLetterPublisher(
+            StreamBridge streamBridge,
+            MeterRegistry meterRegistry,
+            @Value("${app.reactive-consumer.max-attempts:3}") int maxAttempts,
+            @Value("${app.reactive-consumer.back-off-initial-interval:500ms}") Duration backOffInitialInterval,
+            @Value("${app.reactive-consumer.back-off-max-interval:1s}") Duration backOffMaxInterval) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Invalid maxAttempts: " + maxAttempts);
+        }
+        this.streamBridge = streamBridge;
+        this.deadLettered = Counter.builder("events.dead.lettered")
+                .description("Events sent to the dead letter destination after their last failed attempt")
+                .register(meterRegistry);
+        this.maxAttempts = maxAttempts;
+        this.backOffInitialInterval = backOffInitialInterval;
+        this.backOffMaxInterval = backOffMaxInterval;
+    }
+
+    public Mono<Void> processOrDeadLetter(Event<?, ?> event, Supplier<Mono<Void>> processing) {
+        return Mono.defer(processing)
+                .retryWhen(Retry.backoff(maxAttempts - 1, backOffInitialInterval)
+                        .maxBackoff(backOffMaxInterval)
+                        .doBeforeRetry(signal -> log.warn("Retries a {} event for key: {}, attempt {} failed: {}",
+                                event.getEventType(), event.getKey(), signal.totalRetries() + 1, signal.failure().toString()))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .onErrorResume(error -> deadLetter(event, error));
+    }
+
+    private Mono<Void> deadLetter(Event<?, ?> event, Throwable error) {
+        return Mono.<Void>fromRunnable(() -> {
+                    log.error("Failed to process a {} event for key: {} after {} attempts, sends it to the dead letter destination: {}",
+                            event.getEventType(), event.getKey(), maxAttempts, error.toString());
+                    streamBridge.send(BINDING_NAME, MessageBuilder.withPayload(event)
+                            .setHeader(EXCEPTION_MESSAGE_HEADER, error.toString())
+                            .build());
+                    deadLettered.increment();
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                // Nothing more can be done for the event here, the broker has already acked it
+                .onErrorResume(sendError -> {
+                    log.error("Lost a {} event for key: {}, failed to send it to the dead letter destination: {}",
+                            event.getEventType(), event.getKey(), sendError.toString());
+                    return Mono.empty();
+                });
+    }
+}
@@ -0,0 +1,66 @@
+package se.magnus.util.messaging;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+// Remembers the ids of recently applied events, so redeliveries within the window are dropped before
+// they reach the database. An event is only remembered once it has been applied successfully, so a
+// failed attempt is still retried. Events without an id, e.g. from older producers, are always applied
+@Component
+@Slf4j
+public class EventDeduplicator {
+    private final Cache<UUID, Boolean> appliedEvents;
+    private final Counter duplicates;
+
+    public EventDeduplicator(
+            MeterRegistry meterRegistry,
+            @Value("${app.event-dedup.maximum-size:100000}") long maximumSize,
+            @Value("${app.event-dedup.window:10m}") Duration window) {
+        this.appliedEvents = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(window)
+                .build();
+        this.duplicates = meterRegistry.counter("events.duplicates.dropped");
+    }
+
+    private boolean isDuplicate(UUID eventId) {
+        if (eventId == null || appliedEvents.getIfPresent(eventId) == null) {
+            return false;
+        }
+        duplicates.increment();
+        log.info("Drops the already applied event: {}", eventId);
+        return true;
+    }
+
+    private void markApplied(UUID eventId) {
+        if (eventId != null) {
+            appliedEvents.put(eventId, Boolean.TRUE);
+        }
+    }
+
+    public Mono<Void> applyOnce(UUID eventId, Supplier<Mono<Void>> action) {
+        if (isDuplicate(eventId)) {
+            return Mono.empty();
+        }
+        return action.get().doOnSuccess(result -> markApplied(eventId));
+    }
+
+    // For consumers that apply events on the calling thread
+    public void applyOnceBlocking(UUID eventId, Runnable action) {
+        if (isDuplicate(eventId)) {
+            return;
+        }
+        action.run();
+        markApplied(eventId);
+    }
+}
@@ -0,0 +1,67 @@
+package se.magnus.util.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Records how long it takes to apply an event, and the time from when the event was created by the publisher
+// until it was applied, both per event type. The latency includes the time the event waited in the broker,
+// so it grows when a consumer falls behind
+@Component
+public class EventMetrics {
+    private static final Duration MAX_EXPECTED_LATENCY = Duration.ofMinutes(10);
+
+    private final MeterRegistry meterRegistry;
+
+    public EventMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> Mono<T> timed(Object eventType, ZonedDateTime eventCreatedAt, Supplier<Mono<T>> processing) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return processing.get()
+                    .doOnSuccess(result -> record(eventType, eventCreatedAt, start, "success"))
+                    .doOnError(error -> record(eventType, eventCreatedAt, start, "error"));
+        });
+    }
+
+    public void timedBlocking(Object eventType, ZonedDateTime eventCreatedAt, Runnable processing) {
+        long start = System.nanoTime();
+        try {
+            processing.run();
+        } catch (RuntimeException e) {
+            record(eventType, eventCreatedAt, start, "error");
+            throw e;
+        }
+        record(eventType, eventCreatedAt, start, "success");
+    }
+
+    private void record(Object eventType, ZonedDateTime eventCreatedAt, long start, String outcome) {
+        String type = String.valueOf(eventType);
+        Timer.builder("events.processing.time")
+                .tag("type", type)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        if (eventCreatedAt != null && outcome.equals("success")) {
+            Duration latency = Duration.between(eventCreatedAt.toInstant(), Instant.now());
+            Timer.builder("events.publish.to.apply.latency")
+                    .tag("type", type)
+                    .publishPercentileHistogram()
+                    .maximumExpectedValue(MAX_EXPECTED_LATENCY)
+                    .register(meterRegistry)
+                    // Clocks of the publisher and the consumer can differ slightly
+                    .record(latency.isNegative() ? Duration.ZERO : latency);
+        }
+    }
+}
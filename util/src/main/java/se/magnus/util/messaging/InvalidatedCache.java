@@ -0,0 +1,73 @@
+package se.magnus.util.messaging;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A Caffeine cache kept fresh by invalidation events. Every invalidation gives its key a new generation, and a value
+// read from the source before an invalidation of its key is not cached, since it may already be stale. Reads take
+// generation(key) before they go to the source and pass it to put(). Generations are per key, so a steady stream of
+// writes to some keys does not keep the others from being cached
+@Slf4j
+public class InvalidatedCache<K, V> {
+    // Longer than any read can take, a read that outlives the generation of its key could cache a stale value
+    private static final Duration GENERATION_RETENTION = Duration.ofMinutes(10);
+
+    private final String name;
+    private final boolean enabled;
+    private final Cache<K, V> cache;
+    // All generations come from one counter, so they only grow, also across invalidateAll() and expired keys
+    private final AtomicLong lastGeneration = new AtomicLong();
+    private final Cache<K, Long> generations = Caffeine.newBuilder().expireAfterWrite(GENERATION_RETENTION).build();
+    private volatile long allGeneration;
+
+    public InvalidatedCache(String name, Caffeine<? super K, ? super V> builder, MeterRegistry meterRegistry, boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+        this.cache = builder.recordStats().build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Share of lookups served from the cache")
+                .tag("cache", name)
+                .register(meterRegistry);
+        log.info("Creates a {}, enabled = {}", name, enabled);
+    }
+
+    public V get(K key) {
+        return enabled ? cache.getIfPresent(key) : null;
+    }
+
+    public long generation(K key) {
+        Long keyGeneration = generations.getIfPresent(key);
+        return keyGeneration == null ? allGeneration : Math.max(keyGeneration, allGeneration);
+    }
+
+    public void put(K key, V value, long readGeneration) {
+        if (!enabled || generation(key) != readGeneration) {
+            return;
+        }
+        cache.put(key, value);
+        // An invalidation may have run between the check and the put, then the put is undone
+        if (generation(key) != readGeneration) {
+            cache.invalidate(key);
+        }
+    }
+
+    public void invalidate(K key) {
+        log.debug("Invalidates the {} entry for key: {}", name, key);
+        generations.put(key, lastGeneration.incrementAndGet());
+        cache.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        allGeneration = lastGeneration.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,40 @@
+package se.magnus.util.messaging;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+// Collapses a batch of events per key. An event that supersedes everything before it for the same key,
+// e.g. a delete of all data for a product, drops the earlier events for that key, so they never reach the
+// database. The remaining events keep their original order, so per-key order is unchanged. Used by the
+// batchMessageProcessor of each core service
+public final class KeyedCoalescing {
+
+    private KeyedCoalescing() {
+    }
+
+    public static <T> List<T> coalesce(List<T> events, Function<T, ?> keyExtractor, Predicate<T> supersedesEarlier) {
+        Map<Object, Integer> lastSuperseding = new HashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            T event = events.get(i);
+            if (supersedesEarlier.test(event)) {
+                lastSuperseding.put(keyExtractor.apply(event), i);
+            }
+        }
+        if (lastSuperseding.isEmpty()) {
+            return events;
+        }
+
+        List<T> coalesced = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            T event = events.get(i);
+            if (i >= lastSuperseding.getOrDefault(keyExtractor.apply(event), -1)) {
+                coalesced.add(event);
+            }
+        }
+        return coalesced;
+    }
+}
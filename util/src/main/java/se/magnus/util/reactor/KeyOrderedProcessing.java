@@ -0,0 +1,27 @@
+package se.magnus.util.reactor;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+// Elements are spread over a fixed number of lanes by the hash of their key. Each lane is processed
+// sequentially, so elements with the same key keep their order, while the lanes run concurrently. The reactive
+// message processors use it to apply the events of a product in order and those of different products in parallel
+public final class KeyOrderedProcessing {
+
+    private KeyOrderedProcessing() {
+    }
+
+    public static <T> Mono<Void> process(Flux<T> elements, Function<T, ?> keyExtractor, int concurrency, Function<T, Mono<Void>> handler) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Invalid concurrency: " + concurrency);
+        }
+
+        return elements
+                .groupBy(element -> Math.floorMod(Objects.hashCode(keyExtractor.apply(element)), concurrency))
+                .flatMap(lane -> lane.concatMap(handler), concurrency)
+                .then();
+    }
+}
@@ -0,0 +1,154 @@
+package se.magnus.util.reactor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Replaces .log() on hot paths: every subscription is counted, only a sample of them is timed,
+// and nothing is written per signal. Each chain can be tuned or switched off with
+// app.instrumentation.chains.<chain>.enabled and app.instrumentation.chains.<chain>.sample-rate
+@Component
+public class ReactiveInstrumentation {
+    private static final Logger LOG = LoggerFactory.getLogger(ReactiveInstrumentation.class);
+
+    private static final String PROPERTY_PREFIX = "app.instrumentation";
+
+    private final MeterRegistry registry;
+    private final Environment environment;
+    private final boolean enabled;
+    private final double sampleRate;
+    private final Map<String, ChainMeters> chains = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ReactiveInstrumentation(MeterRegistry registry, Environment environment) {
+        this.registry = registry;
+        this.environment = environment;
+        this.enabled = environment.getProperty(PROPERTY_PREFIX + ".enabled", Boolean.class, true);
+        this.sampleRate = environment.getProperty(PROPERTY_PREFIX + ".sample-rate", Double.class, 0.1);
+    }
+
+    public <T> Function<Flux<T>, Flux<T>> flux(String chain) {
+        ChainMeters meters = chains.computeIfAbsent(chain, this::createChainMeters);
+        if (!meters.enabled) {
+            return Function.identity();
+        }
+
+        return flux -> Flux.defer(() -> {
+            meters.subscriptions.increment();
+            if (!meters.sampled()) {
+                return flux.doOnError(meters::recordError);
+            }
+
+            Sample sample = new Sample(meters);
+            return flux
+                    .doOnNext(value -> sample.elements++)
+                    .doOnError(meters::recordError)
+                    .doFinally(sample::stop);
+        });
+    }
+
+    public <T> Function<Mono<T>, Mono<T>> mono(String chain) {
+        ChainMeters meters = chains.computeIfAbsent(chain, this::createChainMeters);
+        if (!meters.enabled) {
+            return Function.identity();
+        }
+
+        return mono -> Mono.defer(() -> {
+            meters.subscriptions.increment();
+            if (!meters.sampled()) {
+                return mono.doOnError(meters::recordError);
+            }
+
+            Sample sample = new Sample(meters);
+            return mono
+                    .doOnNext(value -> sample.elements++)
+                    .doOnError(meters::recordError)
+                    .doFinally(sample::stop);
+        });
+    }
+
+    private ChainMeters createChainMeters(String chain) {
+        String chainPrefix = PROPERTY_PREFIX + ".chains." + chain;
+        boolean chainEnabled = environment.getProperty(chainPrefix + ".enabled", Boolean.class, enabled);
+        double chainSampleRate = environment.getProperty(chainPrefix + ".sample-rate", Double.class, sampleRate);
+
+        LOG.debug("Instrumentation of chain {}: enabled={}, sample-rate={}", chain, chainEnabled, chainSampleRate);
+        return new ChainMeters(registry, chain, chainEnabled, chainSampleRate);
+    }
+
+    private static class ChainMeters {
+        private final MeterRegistry registry;
+        private final String chain;
+        private final boolean enabled;
+        private final double sampleRate;
+        private final Counter subscriptions;
+        private final Timer completed;
+        private final Timer failed;
+        private final Timer cancelled;
+        private final DistributionSummary elements;
+
+        ChainMeters(MeterRegistry registry, String chain, boolean enabled, double sampleRate) {
+            this.registry = registry;
+            this.chain = chain;
+            this.enabled = enabled;
+            this.sampleRate = sampleRate;
+            this.subscriptions = enabled ? Counter.builder("reactive.chain.subscriptions").tag("chain", chain).register(registry) : null;
+            this.completed = enabled ? timer(registry, chain, "success") : null;
+            this.failed = enabled ? timer(registry, chain, "error") : null;
+            this.cancelled = enabled ? timer(registry, chain, "cancelled") : null;
+            this.elements = enabled ? DistributionSummary.builder("reactive.chain.elements").tag("chain", chain).register(registry) : null;
+        }
+
+        private static Timer timer(MeterRegistry registry, String chain, String outcome) {
+            return Timer.builder("reactive.chain.duration")
+                    .tag("chain", chain)
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+
+        boolean sampled() {
+            return sampleRate >= 1.0 || (sampleRate > 0.0 && ThreadLocalRandom.current().nextDouble() < sampleRate);
+        }
+
+        void recordError(Throwable error) {
+            registry.counter("reactive.chain.errors", "chain", chain, "exception", error.getClass().getSimpleName()).increment();
+        }
+    }
+
+    // Reactive Streams guarantees serial onNext signals, so the element count needs no synchronization
+    private static class Sample {
+        private final ChainMeters meters;
+        private final long startTime = System.nanoTime();
+        private long elements;
+
+        Sample(ChainMeters meters) {
+            this.meters = meters;
+        }
+
+        void stop(SignalType signal) {
+            long duration = System.nanoTime() - startTime;
+            Timer timer = switch (signal) {
+                case ON_ERROR -> meters.failed;
+                case CANCEL -> meters.cancelled;
+                default -> meters.completed;
+            };
+            timer.record(duration, TimeUnit.NANOSECONDS);
+            meters.elements.record(elements);
+        }
+    }
+}
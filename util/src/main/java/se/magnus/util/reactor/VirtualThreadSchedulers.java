@@ -0,0 +1,124 @@
+package se.magnus.util.reactor;
+
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Schedulers for blocking work that run every task on its own virtual thread. A semaphore caps how many
+// tasks run at the same time, e.g. to the size of a connection pool. Tasks waiting for a permit park their
+// virtual thread instead of waiting in a bounded queue, so bursts are not rejected and cost little memory
+public final class VirtualThreadSchedulers {
+
+    private VirtualThreadSchedulers() {
+    }
+
+    public static Scheduler newConcurrencyLimited(String name, int maxConcurrency) {
+        return Schedulers.fromExecutorService(new ConcurrencyLimitedExecutor(name, maxConcurrency), name);
+    }
+
+    // FutureTask.cancel(true) only interrupts a task once run() has started, so a task cancelled while it waits for a
+    // permit would keep its virtual thread parked until it got one. Cancelling also wakes up the waiting thread
+    static final class PermitTask<T> extends FutureTask<T> {
+        private volatile Thread waiter;
+
+        PermitTask(Callable<T> callable) {
+            super(callable);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Thread thread = waiter;
+            if (cancelled && thread != null) {
+                thread.interrupt();
+            }
+            return cancelled;
+        }
+    }
+
+    static final class ConcurrencyLimitedExecutor extends AbstractExecutorService {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        ConcurrencyLimitedExecutor(String name, int maxConcurrency) {
+            this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            return new PermitTask<>(callable);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+            return new PermitTask<>(Executors.callable(runnable, value));
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            delegate.execute(() -> {
+                PermitTask<?> permitTask = task instanceof PermitTask<?> t ? t : null;
+                try {
+                    if (permitTask != null) {
+                        permitTask.waiter = Thread.currentThread();
+                        if (permitTask.isCancelled()) {
+                            return;
+                        }
+                    }
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    // Only PermitTask.cancel() interrupts a task that waits for a permit
+                    return;
+                } finally {
+                    if (permitTask != null) {
+                        permitTask.waiter = null;
+                    }
+                }
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        int waitingTasks() {
+            return permits.getQueueLength();
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package se.magnus.util.http;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import se.magnus.util.exceptions.DeadlineExceededException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
+
+public class RequestDeadlineWebFilterTest {
+    @Test
+    public void testDeadlineFromHeader() {
+        RequestDeadlineWebFilter filter = new RequestDeadlineWebFilter(Duration.ZERO);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/product/1")
+                .header(RequestDeadline.HEADER, "2000"));
+        AtomicReference<Instant> deadline = new AtomicReference<>();
+
+        filter.filter(exchange, captureDeadline(deadline)).block();
+
+        assertThat(deadline.get()).isBetween(Instant.now().plusMillis(1000), Instant.now().plusMillis(2000));
+    }
+
+    @Test
+    public void testDefaultBudget() {
+        RequestDeadlineWebFilter filter = new RequestDeadlineWebFilter(Duration.ofSeconds(5));
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/product/1"));
+        AtomicReference<Instant> deadline = new AtomicReference<>();
+
+        filter.filter(exchange, captureDeadline(deadline)).block();
+
+        assertThat(deadline.get()).isAfter(Instant.now().plusSeconds(4));
+    }
+
+    @Test
+    public void testNoDeadline() {
+        RequestDeadlineWebFilter filter = new RequestDeadlineWebFilter(Duration.ZERO);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/product/1"));
+        AtomicReference<Instant> deadline = new AtomicReference<>();
+
+        filter.filter(exchange, captureDeadline(deadline)).block();
+
+        assertThat(deadline.get()).isNull();
+    }
+
+    @Test
+    public void testExpiredDeadlineIsRejected() {
+        RequestDeadlineWebFilter filter = new RequestDeadlineWebFilter(Duration.ZERO);
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/product/1")
+                .header(RequestDeadline.HEADER, "0"));
+        AtomicReference<Instant> deadline = new AtomicReference<>();
+
+        filter.filter(exchange, captureDeadline(deadline)).block();
+
+        assertThat(exchange.getResponse().getStatusCode()).isEqualTo(GATEWAY_TIMEOUT);
+        assertThat(deadline.get()).isNull();
+    }
+
+    @Test
+    public void testCheckFailsWhenExpired() {
+        Mono<Void> check = RequestDeadline.check()
+                .contextWrite(context -> RequestDeadline.putInContext(context, Instant.now().minusMillis(1)));
+
+        assertThatThrownBy(check::block).isInstanceOf(DeadlineExceededException.class);
+    }
+
+    private WebFilterChain captureDeadline(AtomicReference<Instant> deadline) {
+        return exchange -> Mono.deferContextual(context -> {
+            RequestDeadline.fromContext(context).ifPresent(deadline::set);
+            return Mono.empty();
+        });
+    }
+}
@@ -0,0 +1,38 @@
+package se.magnus.util.messaging;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cloud.stream.function.StreamBridge;
+import se.magnus.api.event.Event;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static se.magnus.api.event.Event.Type.CREATE;
+
+public class AppliedEventPublisherTest {
+    private final StreamBridge streamBridge = mock(StreamBridge.class);
+    private final AppliedEventPublisher publisher = new AppliedEventPublisher(streamBridge);
+
+    @Test
+    public void testOnlyTheKeyIsPublished() {
+        publisher.published(new Event<>(CREATE, 1, "payload")).block();
+
+        ArgumentCaptor<Object> sent = ArgumentCaptor.forClass(Object.class);
+        verify(streamBridge).send(eq(AppliedEventPublisher.BINDING_NAME), sent.capture());
+        Event<Integer, ?> appliedEvent = (Event<Integer, ?>) sent.getValue();
+        assertThat(appliedEvent.getEventType()).isEqualTo(CREATE);
+        assertThat(appliedEvent.getKey()).isEqualTo(1);
+        assertThat(appliedEvent.getData()).isNull();
+    }
+
+    @Test
+    public void testFailedPublishDoesNotFailTheEvent() {
+        when(streamBridge.send(any(), any())).thenThrow(new IllegalStateException("broker down"));
+
+        publisher.published(new Event<>(CREATE, 1, "payload")).block();
+    }
+}
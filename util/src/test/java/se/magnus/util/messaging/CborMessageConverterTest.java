@@ -0,0 +1,106 @@
+package se.magnus.util.messaging;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import se.magnus.api.core.review.Review;
+import se.magnus.api.event.Event;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CborMessageConverterTest {
+    private final CborMessageConverter converter = new CborMessageConverter();
+
+    @Test
+    public void testRoundTripWithGenericType() {
+        ZonedDateTime createdAt = ZonedDateTime.parse("2023-01-01T10:15:30Z");
+        Envelope<Item> envelope = new Envelope<>(createdAt, List.of(new Item(1, "a"), new Item(2, "b")));
+        MessageHeaders headers = new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, CborMessageConverter.APPLICATION_CBOR));
+
+        Message<?> message = converter.toMessage(envelope, headers);
+        Envelope<Item> decoded = (Envelope<Item>) converter.fromMessage(message, Envelope.class,
+                new ParameterizedTypeReference<Envelope<Item>>() {}.getType());
+
+        assertThat(message.getPayload()).isInstanceOf(byte[].class);
+        assertThat(decoded.getCreatedAt().toInstant()).isEqualTo(createdAt.toInstant());
+        assertThat(decoded.getItems()).extracting(Item::getName).containsExactly("a", "b");
+    }
+
+    // The payload sizes behind EventCodecBenchmark, which only measures the encoding and decoding time
+    @Test
+    public void testBatchEventIsSmallerThanJson() {
+        MappingJackson2MessageConverter jsonConverter = new MappingJackson2MessageConverter();
+        jsonConverter.setSerializedPayloadClass(byte[].class);
+        jsonConverter.getObjectMapper().findAndRegisterModules();
+        Event<Integer, Review> event = Event.createBatch(1, IntStream.rangeClosed(1, 100)
+                .mapToObj(reviewId -> new Review(1, reviewId, "Author " + reviewId, "Subject " + reviewId, "Content of review " + reviewId, null))
+                .toList());
+
+        byte[] json = (byte[]) jsonConverter.toMessage(event, new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON))).getPayload();
+        byte[] cbor = (byte[]) converter.toMessage(event, new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, CborMessageConverter.APPLICATION_CBOR))).getPayload();
+
+        assertThat(cbor.length).isLessThan(json.length);
+    }
+
+    @Test
+    public void testJsonMessagesAreLeftToOtherConverters() {
+        Message<byte[]> jsonMessage = MessageBuilder.withPayload("{\"id\":1}".getBytes())
+                .setHeader(MessageHeaders.CONTENT_TYPE, "application/json")
+                .build();
+        Message<byte[]> messageWithoutContentType = MessageBuilder.withPayload("{\"id\":1}".getBytes()).build();
+
+        assertThat(converter.fromMessage(jsonMessage, Item.class)).isNull();
+        assertThat(converter.fromMessage(messageWithoutContentType, Item.class)).isNull();
+    }
+
+    public static class Envelope<T> {
+        private ZonedDateTime createdAt;
+        private List<T> items;
+
+        public Envelope() {
+        }
+
+        public Envelope(ZonedDateTime createdAt, List<T> items) {
+            this.createdAt = createdAt;
+            this.items = items;
+        }
+
+        public ZonedDateTime getCreatedAt() {
+            return createdAt;
+        }
+
+        public List<T> getItems() {
+            return items;
+        }
+    }
+
+    public static class Item {
+        private int id;
+        private String name;
+
+        public Item() {
+        }
+
+        public Item(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
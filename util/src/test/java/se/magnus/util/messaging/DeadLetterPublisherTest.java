@@ -0,0 +1,63 @@
+package se.magnus.util.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.messaging.Message;
+import reactor.core.publisher.Mono;
+import se.magnus.api.event.Event;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static se.magnus.api.event.Event.Type.CREATE;
+
+public class DeadLetterPublisherTest {
+    private final StreamBridge streamBridge = mock(StreamBridge.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DeadLetterPublisher publisher = new DeadLetterPublisher(streamBridge, meterRegistry, 3, Duration.ofMillis(1), Duration.ofMillis(5));
+    private final AtomicInteger attempts = new AtomicInteger();
+
+    @Test
+    public void testEventIsRetriedUntilItSucceeds() {
+        publisher.processOrDeadLetter(new Event<>(CREATE, 1, "payload"), () -> attempts.incrementAndGet() < 3
+                ? Mono.error(new IllegalStateException("database down"))
+                : Mono.empty()).block();
+
+        assertThat(attempts).hasValue(3);
+        verify(streamBridge, never()).send(any(), any());
+    }
+
+    @Test
+    public void testEventIsDeadLetteredAfterTheLastAttempt() {
+        Event<Integer, String> event = new Event<>(CREATE, 1, "payload");
+
+        publisher.processOrDeadLetter(event, () -> {
+            attempts.incrementAndGet();
+            return Mono.error(new IllegalStateException("database down"));
+        }).block();
+
+        assertThat(attempts).hasValue(3);
+        ArgumentCaptor<Object> sent = ArgumentCaptor.forClass(Object.class);
+        verify(streamBridge).send(eq(DeadLetterPublisher.BINDING_NAME), sent.capture());
+        Message<?> message = (Message<?>) sent.getValue();
+        assertThat(message.getPayload()).isSameAs(event);
+        assertThat(message.getHeaders().get(DeadLetterPublisher.EXCEPTION_MESSAGE_HEADER, String.class)).contains("database down");
+        assertThat(meterRegistry.get("events.dead.lettered").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailedDeadLetterDoesNotFailTheStream() {
+        when(streamBridge.send(any(), any())).thenThrow(new IllegalStateException("broker down"));
+
+        publisher.processOrDeadLetter(new Event<>(CREATE, 1, "payload"), () -> Mono.error(new IllegalStateException("database down"))).block();
+    }
+}
@@ -0,0 +1,65 @@
+package se.magnus.util.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EventDeduplicatorTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final EventDeduplicator deduplicator = new EventDeduplicator(meterRegistry, 1000, Duration.ofMinutes(1));
+
+    @Test
+    public void testEventIsAppliedOnce() {
+        AtomicInteger applied = new AtomicInteger();
+        UUID eventId = UUID.randomUUID();
+
+        deduplicator.applyOnce(eventId, () -> Mono.fromRunnable(applied::incrementAndGet)).block();
+        deduplicator.applyOnce(eventId, () -> Mono.fromRunnable(applied::incrementAndGet)).block();
+
+        assertThat(applied).hasValue(1);
+        assertThat(meterRegistry.counter("events.duplicates.dropped").count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailedEventIsRetried() {
+        AtomicInteger applied = new AtomicInteger();
+        UUID eventId = UUID.randomUUID();
+
+        assertThatThrownBy(() -> deduplicator.applyOnce(eventId, () -> Mono.error(new IllegalStateException("boom"))).block())
+                .isInstanceOf(IllegalStateException.class);
+        deduplicator.applyOnce(eventId, () -> Mono.fromRunnable(applied::incrementAndGet)).block();
+
+        assertThat(applied).hasValue(1);
+    }
+
+    @Test
+    public void testBlockingEventIsAppliedOnceAndRetriedOnFailure() {
+        AtomicInteger applied = new AtomicInteger();
+        UUID eventId = UUID.randomUUID();
+
+        assertThatThrownBy(() -> deduplicator.applyOnceBlocking(eventId, () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        deduplicator.applyOnceBlocking(eventId, applied::incrementAndGet);
+        deduplicator.applyOnceBlocking(eventId, applied::incrementAndGet);
+
+        assertThat(applied).hasValue(1);
+    }
+
+    @Test
+    public void testEventsWithoutIdAreAlwaysApplied() {
+        AtomicInteger applied = new AtomicInteger();
+
+        deduplicator.applyOnce(null, () -> Mono.fromRunnable(applied::incrementAndGet)).block();
+        deduplicator.applyOnce(null, () -> Mono.fromRunnable(applied::incrementAndGet)).block();
+
+        assertThat(applied).hasValue(2);
+    }
+}
@@ -0,0 +1,37 @@
+package se.magnus.util.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.ZonedDateTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class EventMetricsTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final EventMetrics eventMetrics = new EventMetrics(meterRegistry);
+
+    @Test
+    public void testLatencyIsMeasuredFromEventCreation() {
+        ZonedDateTime createdAt = ZonedDateTime.now().minusSeconds(2);
+
+        eventMetrics.timed("CREATE", createdAt, () -> Mono.just("applied")).block();
+
+        assertThat(meterRegistry.get("events.processing.time").tags("type", "CREATE", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("events.publish.to.apply.latency").tag("type", "CREATE").timer().totalTime(TimeUnit.SECONDS))
+                .isGreaterThanOrEqualTo(2.0);
+    }
+
+    @Test
+    public void testFailedEventsHaveNoLatency() {
+        assertThatThrownBy(() -> eventMetrics.timedBlocking("DELETE", ZonedDateTime.now(), () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(meterRegistry.get("events.processing.time").tags("type", "DELETE", "outcome", "error").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("events.publish.to.apply.latency").timer()).isNull();
+    }
+}
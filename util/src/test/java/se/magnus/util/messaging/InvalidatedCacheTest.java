@@ -0,0 +1,66 @@
+package se.magnus.util.messaging;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InvalidatedCacheTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final InvalidatedCache<Integer, String> cache = new InvalidatedCache<>("testCache", Caffeine.newBuilder().maximumSize(100), meterRegistry, true);
+
+    @Test
+    public void testValueIsCachedUntilInvalidated() {
+        cache.put(1, "a", cache.generation(1));
+        assertThat(cache.get(1)).isEqualTo("a");
+
+        cache.invalidate(1);
+        assertThat(cache.get(1)).isNull();
+    }
+
+    @Test
+    public void testValueReadBeforeAnInvalidationIsNotCached() {
+        long readGeneration = cache.generation(1);
+        cache.invalidate(1);
+
+        cache.put(1, "stale", readGeneration);
+        assertThat(cache.get(1)).isNull();
+    }
+
+    @Test
+    public void testInvalidationOfAnotherKeyDoesNotBlockAPut() {
+        long readGeneration = cache.generation(1);
+        cache.invalidate(2);
+
+        cache.put(1, "a", readGeneration);
+        assertThat(cache.get(1)).isEqualTo("a");
+    }
+
+    @Test
+    public void testValueReadBeforeAnInvalidateAllIsNotCached() {
+        cache.invalidate(1);
+        long readGeneration = cache.generation(1);
+        cache.invalidateAll();
+
+        cache.put(1, "stale", readGeneration);
+        assertThat(cache.get(1)).isNull();
+    }
+
+    @Test
+    public void testHitRatioIsPublished() {
+        cache.put(1, "a", cache.generation(1));
+        cache.get(1);
+        cache.get(2);
+
+        assertThat(meterRegistry.get("cache.hit.ratio").tag("cache", "testCache").gauge().value()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void testDisabledCacheIsAlwaysEmpty() {
+        InvalidatedCache<Integer, String> disabled = new InvalidatedCache<>("disabledCache", Caffeine.newBuilder(), meterRegistry, false);
+
+        disabled.put(1, "a", disabled.generation(1));
+        assertThat(disabled.get(1)).isNull();
+    }
+}
@@ -0,0 +1,27 @@
+package se.magnus.util.messaging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeyedCoalescingTest {
+
+    @Test
+    public void testDeleteSupersedesEarlierEventsForTheSameKey() {
+        List<String> events = List.of("1:create", "2:create", "1:delete", "1:delete", "2:update", "1:create");
+
+        List<String> coalesced = KeyedCoalescing.coalesce(events, event -> event.split(":")[0], event -> event.endsWith("delete"));
+
+        assertThat(coalesced).containsExactly("2:create", "1:delete", "2:update", "1:create");
+    }
+
+    @Test
+    public void testBatchWithoutSupersedingEventsIsUnchanged() {
+        List<String> events = List.of("1:create", "2:create", "1:update");
+
+        assertThat(KeyedCoalescing.coalesce(events, event -> event.split(":")[0], event -> event.endsWith("delete")))
+                .isSameAs(events);
+    }
+}
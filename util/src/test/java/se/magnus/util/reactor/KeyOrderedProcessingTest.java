@@ -0,0 +1,55 @@
+package se.magnus.util.reactor;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KeyOrderedProcessingTest {
+
+    @Test
+    public void testOrderIsKeptPerKey() {
+        Map<Integer, List<Integer>> processed = new ConcurrentHashMap<>();
+        List<int[]> events = IntStream.range(0, 200).mapToObj(i -> new int[]{i % 10, i}).toList();
+
+        KeyOrderedProcessing.process(Flux.fromIterable(events), event -> event[0], 4,
+                        event -> Mono.delay(Duration.ofMillis(event[1] % 3))
+                                .doOnNext(tick -> processed.computeIfAbsent(event[0], key -> new CopyOnWriteArrayList<>()).add(event[1]))
+                                .then())
+                .block();
+
+        assertThat(processed).hasSize(10);
+        processed.values().forEach(sequence -> assertThat(sequence).isSorted().hasSize(20));
+    }
+
+    @Test
+    public void testLanesRunConcurrently() {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+
+        KeyOrderedProcessing.process(Flux.range(0, 40), key -> key, 4,
+                        event -> Mono.fromRunnable(() -> maxActive.accumulateAndGet(active.incrementAndGet(), Math::max))
+                                .then(Mono.delay(Duration.ofMillis(10)))
+                                .doOnNext(tick -> active.decrementAndGet())
+                                .then())
+                .block();
+
+        assertThat(maxActive.get()).isGreaterThan(1).isLessThanOrEqualTo(4);
+    }
+
+    @Test
+    public void testInvalidConcurrency() {
+        assertThatThrownBy(() -> KeyOrderedProcessing.process(Flux.just(1), key -> key, 0, event -> Mono.empty()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
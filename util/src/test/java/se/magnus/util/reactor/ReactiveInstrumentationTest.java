@@ -0,0 +1,73 @@
+package se.magnus.util.reactor;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ReactiveInstrumentationTest {
+    private SimpleMeterRegistry registry;
+    private MockEnvironment environment;
+
+    @BeforeEach
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        environment = new MockEnvironment();
+    }
+
+    @Test
+    public void testSampledFluxIsTimed() {
+        environment.setProperty("app.instrumentation.sample-rate", "1.0");
+        ReactiveInstrumentation instrumentation = new ReactiveInstrumentation(registry, environment);
+
+        List<Integer> list = Flux.just(1, 2, 3)
+                .transform(instrumentation.flux("test"))
+                .collectList()
+                .block();
+
+        assertThat(list).containsExactly(1, 2, 3);
+        assertThat(registry.get("reactive.chain.subscriptions").tag("chain", "test").counter().count()).isEqualTo(1);
+        assertThat(registry.get("reactive.chain.duration").tags("chain", "test", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(registry.get("reactive.chain.elements").tag("chain", "test").summary().totalAmount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testUnsampledMonoIsOnlyCounted() {
+        environment.setProperty("app.instrumentation.sample-rate", "0.0");
+        ReactiveInstrumentation instrumentation = new ReactiveInstrumentation(registry, environment);
+
+        Mono.just(1).transform(instrumentation.mono("test")).block();
+
+        assertThat(registry.get("reactive.chain.subscriptions").tag("chain", "test").counter().count()).isEqualTo(1);
+        assertThat(registry.get("reactive.chain.duration").tags("chain", "test", "outcome", "success").timer().count()).isZero();
+    }
+
+    @Test
+    public void testErrorsAreAlwaysCounted() {
+        environment.setProperty("app.instrumentation.sample-rate", "0.0");
+        ReactiveInstrumentation instrumentation = new ReactiveInstrumentation(registry, environment);
+
+        Mono<Integer> failing = Mono.<Integer>error(new IllegalStateException("failed"))
+                .transform(instrumentation.mono("test"));
+
+        assertThatThrownBy(failing::block).isInstanceOf(IllegalStateException.class);
+        assertThat(registry.get("reactive.chain.errors").tags("chain", "test", "exception", "IllegalStateException").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void testChainCanBeDisabled() {
+        environment.setProperty("app.instrumentation.chains.quiet.enabled", "false");
+        ReactiveInstrumentation instrumentation = new ReactiveInstrumentation(registry, environment);
+
+        Flux.just(1, 2).transform(instrumentation.flux("quiet")).blockLast();
+
+        assertThat(registry.find("reactive.chain.subscriptions").tag("chain", "quiet").counter()).isNull();
+    }
+}
@@ -0,0 +1,77 @@
+package se.magnus.util.reactor;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VirtualThreadSchedulersTest {
+
+    @Test
+    public void testConcurrencyIsLimited() {
+        Scheduler scheduler = VirtualThreadSchedulers.newConcurrencyLimited("test", 4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        try {
+            Long completed = Flux.range(0, 200)
+                    .flatMap(i -> Mono.fromCallable(() -> {
+                        maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                        Thread.sleep(2);
+                        running.decrementAndGet();
+                        return Thread.currentThread().isVirtual();
+                    }).subscribeOn(scheduler), 200)
+                    .filter(virtual -> virtual)
+                    .count()
+                    .block(Duration.ofSeconds(10));
+
+            assertThat(completed).isEqualTo(200);
+            assertThat(maxRunning.get()).isLessThanOrEqualTo(4);
+        } finally {
+            scheduler.dispose();
+        }
+    }
+
+    @Test
+    public void testCancelledTaskStopsWaitingForAPermit() throws Exception {
+        VirtualThreadSchedulers.ConcurrencyLimitedExecutor executor = new VirtualThreadSchedulers.ConcurrencyLimitedExecutor("test", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean cancelledTaskRan = new AtomicBoolean();
+
+        try {
+            executor.submit(() -> {
+                release.await();
+                return null;
+            });
+            Future<?> waiting = executor.submit(() -> cancelledTaskRan.set(true));
+            awaitWaitingTasks(executor, 1);
+
+            waiting.cancel(true);
+
+            awaitWaitingTasks(executor, 0);
+            release.countDown();
+            executor.shutdown();
+            assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(cancelledTaskRan).isFalse();
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitWaitingTasks(VirtualThreadSchedulers.ConcurrencyLimitedExecutor executor, int expected) throws InterruptedException {
+        for (int i = 0; i < 500 && executor.waitingTasks() != expected; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(executor.waitingTasks()).isEqualTo(expected);
+    }
+}